@@ -0,0 +1,68 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the per-pixel operations of the image processor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImageProcessorBenchmark {
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	@Param({ "1" })
+	public int parallelism;
+
+	private BufferedImage img;
+	private RGBWeights rgbWeights;
+
+	@Setup
+	public void setup() {
+		img = SyntheticImages.create(size);
+		rgbWeights = new RGBWeights(1, 2, 3);
+	}
+
+	@Benchmark
+	public BufferedImage greyscale() {
+		return processor(img.getWidth(), img.getHeight()).greyscale();
+	}
+
+	@Benchmark
+	public BufferedImage changeHue() {
+		return processor(img.getWidth(), img.getHeight()).changeHue();
+	}
+
+	@Benchmark
+	public BufferedImage nearestNeighborDown() {
+		return processor(img.getWidth() / 2, img.getHeight() / 2).nearestNeighbor();
+	}
+
+	@Benchmark
+	public BufferedImage nearestNeighborUp() {
+		return processor(img.getWidth() * 2, img.getHeight() * 2).nearestNeighbor();
+	}
+
+	private ImageProcessor processor(int outWidth, int outHeight) {
+		ImageProcessor ip = new ImageProcessor(Logger.NONE, img, rgbWeights, outWidth, outHeight);
+		ip.setParallelism(parallelism);
+		return ip;
+	}
+}
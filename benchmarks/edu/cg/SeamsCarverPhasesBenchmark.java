@@ -0,0 +1,91 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the phases of finding a single seam: the greyscale conversion,
+ * the pixel energies, the forward cost matrix and the seam backtracking.
+ * Each phase runs on a carver whose previous phases are already done.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SeamsCarverPhasesBenchmark {
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	@Param({ "1" })
+	public int parallelism;
+
+	@Param({ "gradient", "sobel", "entropy" })
+	public String energy;
+
+	private SeamsCarver sc;
+
+	@Setup
+	public void setup() {
+		BufferedImage img = SyntheticImages.create(size);
+		boolean[][] mask = new boolean[img.getHeight()][img.getWidth()];
+		sc = new SeamsCarver(Logger.NONE, img, img.getWidth() - 1, new RGBWeights(1, 1, 1), mask);
+		sc.setParallelism(parallelism);
+		sc.setEnergyFunction(energyFunction(energy));
+		sc.setGreyscale();
+		sc.allocateCostMatrix();
+		sc.initCostMatrix();
+		sc.calcForwardCostMatrix();
+	}
+
+	private static EnergyFunction energyFunction(String name) {
+		switch (name) {
+		case "sobel":
+			return EnergyFunction.SOBEL;
+		case "entropy":
+			return EnergyFunction.ENTROPY;
+		default:
+			return EnergyFunction.GRADIENT;
+		}
+	}
+
+	@Benchmark
+	public int[][] greyscale() {
+		sc.setGreyscale();
+		return sc.greyscale;
+	}
+
+	@Benchmark
+	public long[] energies() {
+		sc.initCostMatrix();
+		return sc.energies;
+	}
+
+	@Benchmark
+	public long[] forwardCostMatrix() {
+		sc.calcForwardCostMatrix();
+		return sc.costMatrix;
+	}
+
+	@Benchmark
+	public int[] backtrackSeam() {
+		// The first seam is found once the cost matrix is calculated.
+		sc.k = 1;
+		int[] seam = sc.findSeam();
+		sc.k = 0;
+		return seam;
+	}
+}
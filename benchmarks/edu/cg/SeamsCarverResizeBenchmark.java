@@ -0,0 +1,79 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.cg.SeamsCarver.Direction;
+
+/**
+ * Benchmarks full reduce and increase operations in both directions,
+ * by a number of seams which is a percentage of the carved dimension.
+ * The horizontal operations stand for the former rotation based horizontal carving.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SeamsCarverResizeBenchmark {
+	@Param({ "320x240", "640x480", "1280x720" })
+	public String size;
+
+	@Param({ "10", "30" })
+	public int seamsPercent;
+
+	@Param({ "1" })
+	public int parallelism;
+
+	private BufferedImage img;
+	private RGBWeights rgbWeights;
+
+	@Setup
+	public void setup() {
+		img = SyntheticImages.create(size);
+		rgbWeights = new RGBWeights(1, 1, 1);
+	}
+
+	@Benchmark
+	public BufferedImage reduceVertical() {
+		return carver(Direction.VERTICAL, -1).resize();
+	}
+
+	@Benchmark
+	public BufferedImage increaseVertical() {
+		return carver(Direction.VERTICAL, 1).resize();
+	}
+
+	@Benchmark
+	public BufferedImage reduceHorizontal() {
+		return carver(Direction.HORIZONTAL, -1).resize();
+	}
+
+	@Benchmark
+	public BufferedImage increaseHorizontal() {
+		return carver(Direction.HORIZONTAL, 1).resize();
+	}
+
+	// Creates a carver which adds (sign 1) or removes (sign -1) the seams.
+	private SeamsCarver carver(Direction direction, int sign) {
+		int inSize = direction == Direction.VERTICAL ? img.getWidth() : img.getHeight();
+		int seams = Math.max(1, inSize * seamsPercent / 100);
+		boolean[][] mask = new boolean[img.getHeight()][img.getWidth()];
+		SeamsCarver sc = new SeamsCarver(Logger.NONE, img, inSize + sign * seams, rgbWeights, mask, direction);
+		sc.setParallelism(parallelism);
+		return sc;
+	}
+}
@@ -0,0 +1,70 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Generates deterministic images for the benchmarks, so they run without any input files.
+ * An image has a smooth background, a few flat shapes with sharp edges, and some noise,
+ * so the seams have both cheap and expensive regions to go through.
+ */
+public class SyntheticImages {
+	private static final long SEED = 0x5EA3C4L;
+
+	private SyntheticImages() {
+	}
+
+	/**
+	 * Creates an image of a given size, written as "widthxheight".
+	 */
+	public static BufferedImage create(String size) {
+		String[] dims = size.split("x");
+		return create(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+	}
+
+	public static BufferedImage create(int width, int height) {
+		Random random = new Random(SEED);
+		PixelBuffer pixels = new PixelBuffer(width, height);
+
+		// Smooth background gradient.
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int r = 255 * x / width;
+				int g = 255 * y / height;
+				int b = 255 * (x + y) / (width + height);
+				pixels.set(x, y, PixelBuffer.rgb(r, g, b));
+			}
+		}
+
+		// Flat shapes, which are the same relative to the image size.
+		for (int i = 0; i < 12; i++) {
+			int cx = random.nextInt(width);
+			int cy = random.nextInt(height);
+			int radius = 1 + random.nextInt(Math.max(1, Math.min(width, height) / 6));
+			int color = PixelBuffer.rgb(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+			boolean circle = random.nextBoolean();
+			for (int y = Math.max(0, cy - radius); y < Math.min(height, cy + radius); y++) {
+				for (int x = Math.max(0, cx - radius); x < Math.min(width, cx + radius); x++) {
+					int dx = x - cx;
+					int dy = y - cy;
+					if (!circle || dx * dx + dy * dy <= radius * radius)
+						pixels.set(x, y, color);
+				}
+			}
+		}
+
+		// Noise.
+		for (int i = 0; i < pixels.pixels.length; i++) {
+			int c = pixels.pixels[i];
+			int n = random.nextInt(17) - 8;
+			pixels.pixels[i] = PixelBuffer.rgb(clamp(PixelBuffer.red(c) + n), clamp(PixelBuffer.green(c) + n),
+					clamp(PixelBuffer.blue(c) + n));
+		}
+
+		return pixels.toImage(BufferedImage.TYPE_INT_RGB);
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
@@ -0,0 +1,206 @@
+package edu.cg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A logger which never blocks the logging thread.
+ * The messages are put in a lock-free ring buffer, and a background thread
+ * drains them periodically and hands them to a sink in batches (a sink of a
+ * Swing component should move them to the event dispatch thread).
+ * Messages below the logger level are discarded, each message type (the message
+ * without its digits, such as "Finding optimal seam #") is limited to a number
+ * of messages per second, and messages are dropped while the buffer is full.
+ * The number of suppressed and dropped messages is reported through the sink.
+ */
+public class AsyncLogger implements Logger {
+	// Interval between two drains of the buffer.
+	private static final long DRAIN_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+	// Number of the message type buckets of the rate limiting (a power of 2).
+	private static final int TYPE_BUCKETS = 256;
+
+	// MARK: A logged message.
+	public static class Record {
+		public final long time; // Time of the message, in milliseconds since the epoch.
+		public final Level level;
+		public final String message;
+
+		public Record(long time, Level level, String message) {
+			this.time = time;
+			this.level = level;
+			this.message = message;
+		}
+	}
+
+	// MARK: Fields
+	private final Consumer<List<Record>> sink;
+	private final AtomicReferenceArray<Record> ring; // Empty slots are null.
+	private final int mask;
+	private final AtomicLong tail;  // Next slot to claim by the logging threads.
+	private volatile long head;     // Next slot to drain, written only by the drain thread.
+	private volatile Level level;
+	private final int maxPerSecond; // Maximal number of messages of a type per second.
+	private final AtomicLongArray typeSeconds;
+	private final AtomicIntegerArray typeCounts;
+	private final LongAdder suppressed;
+	private final LongAdder dropped;
+	private final Thread drainer;
+	private volatile boolean closed;
+
+	/**
+	 * @param sink - receives the messages in batches, on the drain thread.
+	 * @param level - the lowest level which is logged.
+	 * @param capacity - size of the ring buffer, rounded up to a power of 2.
+	 * @param maxPerSecond - maximal number of messages of the same type per second.
+	 */
+	public AsyncLogger(Consumer<List<Record>> sink, Level level, int capacity, int maxPerSecond) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Log capacity must be positive");
+		if (maxPerSecond < 1)
+			throw new IllegalArgumentException("Log rate must be positive");
+
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.sink = sink;
+		ring = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+		tail = new AtomicLong();
+		this.level = level;
+		this.maxPerSecond = maxPerSecond;
+		typeSeconds = new AtomicLongArray(TYPE_BUCKETS);
+		typeCounts = new AtomicIntegerArray(TYPE_BUCKETS);
+		suppressed = new LongAdder();
+		dropped = new LongAdder();
+
+		drainer = new Thread(this::drainLoop, "Log drainer");
+		drainer.setDaemon(true);
+		drainer.start();
+	}
+
+	public void setLevel(Level level) {
+		this.level = level;
+	}
+
+	@Override
+	public boolean isLoggable(Level level) {
+		return !closed && level.compareTo(this.level) >= 0;
+	}
+
+	@Override
+	public void log(String s) {
+		log(Level.INFO, s);
+	}
+
+	@Override
+	public void log(Level level, String s) {
+		if (!isLoggable(level))
+			return;
+
+		if (s == null)
+			s = "null";
+
+		long time = System.currentTimeMillis();
+		if (level != Level.ERROR && !this.withinRate(s, time)) {
+			suppressed.increment();
+			return;
+		}
+
+		// Claim a slot, unless the buffer is full.
+		long t;
+		do {
+			t = tail.get();
+			if (t - head >= ring.length()) {
+				dropped.increment();
+				return;
+			}
+		} while (!tail.compareAndSet(t, t + 1));
+
+		ring.set((int) t & mask, new Record(time, level, s));
+	}
+
+	/**
+	 * Stops the drain thread, after the messages which were already logged are drained.
+	 */
+	public void close() {
+		closed = true;
+		LockSupport.unpark(drainer);
+		try {
+			drainer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns true if a message of the given type may be logged now.
+	 * The count of a type restarts every second. Different types may share a
+	 * bucket, and concurrent messages may be miscounted, which only makes the
+	 * limit approximate.
+	 */
+	private boolean withinRate(String s, long time) {
+		int bucket = typeHash(s) & (TYPE_BUCKETS - 1);
+		long second = time / 1000;
+		if (typeSeconds.get(bucket) != second) {
+			typeSeconds.set(bucket, second);
+			typeCounts.set(bucket, 0);
+		}
+
+		return typeCounts.incrementAndGet(bucket) <= maxPerSecond;
+	}
+
+	// Returns the hash of a message without its digits.
+	private static int typeHash(String s) {
+		int h = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9')
+				h = 31 * h + c;
+		}
+
+		return h ^ (h >>> 16);
+	}
+
+	private void drainLoop() {
+		while (!closed) {
+			LockSupport.parkNanos(this, DRAIN_INTERVAL_NANOS);
+			this.drain();
+		}
+
+		this.drain();
+	}
+
+	/**
+	 * Hands all the published messages to the sink.
+	 * A claimed slot which its message is not set yet ends the batch, and is
+	 * drained next time.
+	 */
+	private void drain() {
+		List<Record> batch = new ArrayList<>();
+		long h = head;
+		Record record;
+		while ((record = ring.get((int) h & mask)) != null) {
+			ring.set((int) h & mask, null);
+			batch.add(record);
+			h++;
+		}
+		head = h;
+
+		long suppressedCount = suppressed.sumThenReset();
+		long droppedCount = dropped.sumThenReset();
+		if (suppressedCount > 0 || droppedCount > 0) {
+			batch.add(new Record(System.currentTimeMillis(), Level.INFO, "(" + suppressedCount
+					+ " repeated messages were suppressed, " + droppedCount + " messages were dropped)"));
+		}
+
+		if (!batch.isEmpty())
+			sink.accept(batch);
+	}
+}
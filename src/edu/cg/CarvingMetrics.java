@@ -0,0 +1,141 @@
+package edu.cg;
+
+import java.util.Locale;
+
+/**
+ * Collects the timing of the phases of seam carving, and counters of its work.
+ * A carver updates its metrics from the thread that runs it, and the metrics of
+ * several carvers (e.g. of a retargeting) can be added up.
+ */
+public class CarvingMetrics {
+	// MARK: Phases of seam carving.
+	public enum Phase {
+		GREYSCALE("greyscale"),       // Converting the image to greyscale values.
+		ENERGY("energy"),             // Calculating (or updating) the pixel energies.
+		COST_MATRIX("cost matrix"),   // Calculating (or updating) the forward cost matrix.
+		BACKTRACK("backtrack"),       // Finding the seams in the cost matrix.
+		SHIFT("shift"),               // Removing the seams from the matrices and the pixels.
+		SEAM_INDEXES("seam indexes"), // Mapping the seams to their original indexes.
+		COPY("copy");                 // Copying the pixels into and out of the carving frame.
+
+		public final String title;
+
+		private Phase(String title) {
+			this.title = title;
+		}
+	}
+
+	// MARK: Fields
+	private final long[] phaseNanos;
+	private int seams;              // Number of seams that were found.
+	private int costMatrices;       // Number of cost matrices calculated from scratch.
+	private int incrementalUpdates; // Number of cost matrices updated around a removed seam.
+	private long costCells;         // Number of cost matrix entries that were calculated.
+	private int allocations;        // Number of pixel sized arrays that were allocated.
+	private long allocatedBytes;    // Size of the pixel sized arrays that were allocated.
+
+	public CarvingMetrics() {
+		phaseNanos = new long[Phase.values().length];
+	}
+
+	// Returns the start time of a phase.
+	public long start() {
+		return System.nanoTime();
+	}
+
+	// Ends a phase which started at a given time.
+	public void stop(Phase phase, long start) {
+		phaseNanos[phase.ordinal()] += System.nanoTime() - start;
+	}
+
+	public void countSeams(int seams) {
+		this.seams += seams;
+	}
+
+	// Counts a cost matrix of a given number of entries, calculated from scratch.
+	public void countCostMatrix(long cells) {
+		costMatrices++;
+		costCells += cells;
+	}
+
+	// Counts an incremental update which calculated a given number of entries.
+	public void countIncrementalUpdate(long cells) {
+		incrementalUpdates++;
+		costCells += cells;
+	}
+
+	public void countAllocation(long bytes) {
+		allocations++;
+		allocatedBytes += bytes;
+	}
+
+	/**
+	 * Adds the metrics of another carver to these ones.
+	 */
+	public void add(CarvingMetrics other) {
+		for (int i = 0; i < phaseNanos.length; i++)
+			phaseNanos[i] += other.phaseNanos[i];
+
+		seams += other.seams;
+		costMatrices += other.costMatrices;
+		incrementalUpdates += other.incrementalUpdates;
+		costCells += other.costCells;
+		allocations += other.allocations;
+		allocatedBytes += other.allocatedBytes;
+	}
+
+	public long getPhaseNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	public long getTotalNanos() {
+		long total = 0;
+		for (long nanos : phaseNanos)
+			total += nanos;
+		return total;
+	}
+
+	public int getSeams() {
+		return seams;
+	}
+
+	public int getCostMatrices() {
+		return costMatrices;
+	}
+
+	public int getIncrementalUpdates() {
+		return incrementalUpdates;
+	}
+
+	public long getCostCells() {
+		return costCells;
+	}
+
+	public int getAllocations() {
+		return allocations;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(seams).append(" seams, ")
+				.append(costMatrices).append(" cost matrices and ")
+				.append(incrementalUpdates).append(" incremental updates (")
+				.append(costCells).append(" entries), ")
+				.append(allocations).append(" allocations (")
+				.append(String.format(Locale.ROOT, "%.1f", allocatedBytes / (double) (1 << 20))).append(" MB); ");
+
+		for (Phase phase : Phase.values())
+			sb.append(phase.title).append(' ').append(millis(getPhaseNanos(phase))).append(", ");
+		sb.append("total ").append(millis(getTotalNanos()));
+		return sb.toString();
+	}
+
+	private static String millis(long nanos) {
+		return String.format(Locale.ROOT, "%.1f ms", nanos / 1e6);
+	}
+}
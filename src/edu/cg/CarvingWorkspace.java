@@ -0,0 +1,229 @@
+package edu.cg;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Semaphore;
+
+/**
+ * The working buffers of a seam carver: the greyscale values, the energies, the cost
+ * matrix and its parents, the original columns and the pixels being carved.
+ * A carver takes its buffers from its workspace, which only allocates a buffer when a
+ * carver needs a larger one than it already has. So a workspace is as large as the
+ * largest image carved with it, and carving images of the same size again allocates
+ * almost nothing.
+ * A buffer keeps the data of the last carver, which the next one overwrites.
+ * A workspace is used by a single carver at a time, a pool lends workspaces to
+ * carvers which run concurrently. A pool may charge its idle workspaces to a memory
+ * budget, which the carvers share with the rest of the application.
+ */
+public class CarvingWorkspace {
+	// MARK: A pool of workspaces.
+	public static class Pool {
+		private final int maxIdle;
+		private final ArrayDeque<CarvingWorkspace> idle;
+		private final Semaphore budget; // The budget the idle workspaces are charged to (may be null).
+		private final long permitBytes; // Number of bytes of a permit of the budget.
+		private int waiting;            // Number of threads waiting for permits of the budget.
+
+		/**
+		 * @param maxIdle - maximal number of workspaces kept while no carver uses them.
+		 */
+		public Pool(int maxIdle) {
+			this(maxIdle, null, 1);
+		}
+
+		/**
+		 * Creates a pool which charges its idle workspaces to a memory budget: a released
+		 * workspace is kept only if the permits of its buffers are available, and they are
+		 * returned once it is borrowed again or dropped.
+		 * @param maxIdle - maximal number of workspaces kept while no carver uses them.
+		 * @param budget - the permits of the memory budget.
+		 * @param permitBytes - number of bytes of a permit.
+		 */
+		public Pool(int maxIdle, Semaphore budget, long permitBytes) {
+			if (maxIdle < 0)
+				throw new IllegalArgumentException("Number of idle workspaces can not be negative");
+			if (permitBytes < 1)
+				throw new IllegalArgumentException("Size of a permit must be positive");
+
+			this.maxIdle = maxIdle;
+			this.budget = budget;
+			this.permitBytes = permitBytes;
+			idle = new ArrayDeque<>();
+		}
+
+		/**
+		 * Returns an idle workspace, or a new one if there is none.
+		 */
+		public synchronized CarvingWorkspace borrow() {
+			CarvingWorkspace workspace = idle.pollFirst();
+			if (workspace == null)
+				return new CarvingWorkspace();
+
+			this.uncharge(workspace);
+			return workspace;
+		}
+
+		/**
+		 * Returns a borrowed workspace to the pool, once its carver is done.
+		 * The workspace is dropped if the budget has no permits for it, or if a thread
+		 * is waiting for permits.
+		 */
+		public synchronized void release(CarvingWorkspace workspace) {
+			if (idle.size() >= maxIdle)
+				return;
+			if (budget != null && (waiting > 0 || !budget.tryAcquire(this.permits(workspace))))
+				return;
+
+			idle.addFirst(workspace);
+		}
+
+		/**
+		 * Drops the idle workspaces, with their buffers.
+		 */
+		public synchronized void clear() {
+			for (CarvingWorkspace workspace : idle)
+				this.uncharge(workspace);
+			idle.clear();
+		}
+
+		/**
+		 * Acquires permits of the budget for another use, such as an image. If they are
+		 * not available, the idle workspaces are dropped, and no workspace is kept until
+		 * the permits are acquired, so the waiting never depends on the idle workspaces.
+		 */
+		public void acquire(int permits) {
+			if (budget == null)
+				throw new IllegalStateException("The pool has no budget");
+
+			synchronized (this) {
+				if (budget.tryAcquire(permits))
+					return;
+
+				this.clear();
+				waiting++;
+			}
+
+			try {
+				budget.acquireUninterruptibly(permits);
+			} finally {
+				synchronized (this) {
+					waiting--;
+				}
+			}
+		}
+
+		private int permits(CarvingWorkspace workspace) {
+			return (int) Math.min(Integer.MAX_VALUE, (workspace.bytes() + permitBytes - 1) / permitBytes);
+		}
+
+		// Returns the permits an idle workspace is charged.
+		private void uncharge(CarvingWorkspace workspace) {
+			if (budget != null)
+				budget.release(this.permits(workspace));
+		}
+	}
+
+	// MARK: Fields
+	private int[][] greyscale;
+	private long[] energies;
+	private long[] costMatrix;
+	private byte[] parents;
+	private int[] originalColumns;
+	private int[] pixels;
+	private CarvingWorkspace coarse; // The workspace of the coarse carver of the multi-resolution search.
+
+	/**
+	 * Drops all the buffers, e.g. after an exceptionally large image was carved.
+	 */
+	public void reset() {
+		greyscale = null;
+		energies = null;
+		costMatrix = null;
+		parents = null;
+		originalColumns = null;
+		pixels = null;
+		coarse = null;
+	}
+
+	/**
+	 * Returns the number of bytes of the buffers.
+	 */
+	public long bytes() {
+		long bytes = 0;
+		if (greyscale != null) bytes += 4L * greyscale.length * greyscale[0].length;
+		if (energies != null) bytes += 8L * energies.length;
+		if (costMatrix != null) bytes += 8L * costMatrix.length;
+		if (parents != null) bytes += parents.length;
+		if (originalColumns != null) bytes += 4L * originalColumns.length;
+		if (pixels != null) bytes += 4L * pixels.length;
+		if (coarse != null) bytes += coarse.bytes();
+		return bytes;
+	}
+
+	// Returns greyscale rows of at least the given width, at least height rows.
+	int[][] greyscale(int width, int height, CarvingMetrics metrics) {
+		if (greyscale == null || greyscale.length < height || greyscale[0].length < width) {
+			// Grow in both dimensions, as the frames of the two directions are transposed.
+			if (greyscale != null) {
+				width = Math.max(width, greyscale[0].length);
+				height = Math.max(height, greyscale.length);
+			}
+			greyscale = new int[height][width];
+			metrics.countAllocation(4L * width * height);
+		}
+
+		return greyscale;
+	}
+
+	long[] energies(int size, CarvingMetrics metrics) {
+		if (energies == null || energies.length < size) {
+			energies = new long[size];
+			metrics.countAllocation(8L * size);
+		}
+
+		return energies;
+	}
+
+	long[] costMatrix(int size, CarvingMetrics metrics) {
+		if (costMatrix == null || costMatrix.length < size) {
+			costMatrix = new long[size];
+			metrics.countAllocation(8L * size);
+		}
+
+		return costMatrix;
+	}
+
+	byte[] parents(int size, CarvingMetrics metrics) {
+		if (parents == null || parents.length < size) {
+			parents = new byte[size];
+			metrics.countAllocation(size);
+		}
+
+		return parents;
+	}
+
+	int[] originalColumns(int size, CarvingMetrics metrics) {
+		if (originalColumns == null || originalColumns.length < size) {
+			originalColumns = new int[size];
+			metrics.countAllocation(4L * size);
+		}
+
+		return originalColumns;
+	}
+
+	int[] pixels(int size, CarvingMetrics metrics) {
+		if (pixels == null || pixels.length < size) {
+			pixels = new int[size];
+			metrics.countAllocation(4L * size);
+		}
+
+		return pixels;
+	}
+
+	CarvingWorkspace coarse() {
+		if (coarse == null)
+			coarse = new CarvingWorkspace();
+
+		return coarse;
+	}
+}
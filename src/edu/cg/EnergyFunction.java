@@ -0,0 +1,273 @@
+package edu.cg;
+
+/**
+ * Calculates the energies of the pixels, which the seams avoid.
+ * The energies are calculated from rows of values: the greyscale values of the image
+ * (each one holds its grey level in every channel), or the input of the function, such
+ * as a saliency map. The values are in the layout of the carving frame, and the carver
+ * removes and duplicates them along with the pixels.
+ * An energy is in the units of the greyscale values, in which a grey level step is
+ * GREY_STEP, so that it is comparable with the forward cost of the seams.
+ * The energies of a range of a row are calculated at once, and the inner loops of the
+ * implementations run over plain arrays without calls or branches, so the JIT can
+ * compile them to vector instructions.
+ */
+public interface EnergyFunction {
+	// Difference between the greyscale values of two adjacent grey levels.
+	public static final int GREY_STEP = 0x010101;
+
+	// The forward differences of the grey levels, which is the cheapest energy.
+	public static final EnergyFunction GRADIENT = new Gradient();
+
+	// The Sobel operator, which is less sensitive to noise.
+	public static final EnergyFunction SOBEL = new Sobel();
+
+	// The gradient and the local entropy in a 9x9 window, which also keeps textured areas.
+	public static final EnergyFunction ENTROPY = new Entropy(4);
+
+	/**
+	 * Returns the number of columns (and rows) on each side of a pixel its energy depends on.
+	 */
+	public int radius();
+
+	/**
+	 * Returns the largest energy of a pixel, which the energy of a protected pixel outweighs.
+	 */
+	public long maxEnergy();
+
+	/**
+	 * Calculates the energies of a range of columns of a row.
+	 * @param values - the rows of values, of which the first width columns of the first height rows are used.
+	 * @param y - the row.
+	 * @param from - first column of the range.
+	 * @param to - the column after the range.
+	 * @param energies - receives the energy of column x at (offset + x).
+	 */
+	public void rowEnergies(int[][] values, int width, int height, int y, int from, int to,
+			long[] energies, int offset);
+
+	/**
+	 * Returns the values the energies are calculated from in image layout, or null if
+	 * they are calculated from the greyscale values.
+	 */
+	public default int[][] input() {
+		return null;
+	}
+
+	/**
+	 * Returns this function with a given input, such as the input of a carved image.
+	 */
+	public default EnergyFunction withInput(int[][] input) {
+		return this;
+	}
+
+	/**
+	 * Returns a function whose energies are taken from a given map, such as the output of
+	 * a saliency model.
+	 * @param saliency - a value between 0 and 255 for each pixel of the image ([y][x]).
+	 */
+	public static EnergyFunction saliencyMap(int[][] saliency) {
+		return new SaliencyMap(saliency);
+	}
+
+	// MARK: The sum of the absolute forward differences in both axes.
+	public static class Gradient implements EnergyFunction {
+		@Override
+		public int radius() {
+			return 1;
+		}
+
+		@Override
+		public long maxEnergy() {
+			return 2L * 255 * GREY_STEP;
+		}
+
+		@Override
+		public void rowEnergies(int[][] values, int width, int height, int y, int from, int to,
+				long[] energies, int offset) {
+			int[] row = values[y];
+			int[] next = values[(y < height - 1) ? y + 1 : y - 1];
+
+			// Every column but the last one takes its right pixel as a neighbor.
+			int end = Math.min(to, width - 1);
+			for (int x = from; x < end; x++)
+				energies[offset + x] = Math.abs(row[x + 1] - row[x]) + Math.abs(next[x] - row[x]);
+
+			if (to == width && from < width) {
+				int x = width - 1;
+				energies[offset + x] = Math.abs(row[x - 1] - row[x]) + Math.abs(next[x] - row[x]);
+			}
+		}
+	}
+
+	// MARK: The sum of the absolute Sobel derivatives in both axes, the image edges are repeated.
+	public static class Sobel implements EnergyFunction {
+		@Override
+		public int radius() {
+			return 1;
+		}
+
+		// Each derivative is at most 4 differences of 255 grey levels.
+		@Override
+		public long maxEnergy() {
+			return 2L * 255 * GREY_STEP;
+		}
+
+		@Override
+		public void rowEnergies(int[][] values, int width, int height, int y, int from, int to,
+				long[] energies, int offset) {
+			int[] above = values[Math.max(0, y - 1)];
+			int[] row = values[y];
+			int[] below = values[Math.min(height - 1, y + 1)];
+
+			int start = Math.max(from, 1);
+			int end = Math.min(to, width - 1);
+			for (int x = start; x < end; x++) {
+				int dx = (above[x + 1] & 0xFF) + 2 * (row[x + 1] & 0xFF) + (below[x + 1] & 0xFF)
+						- (above[x - 1] & 0xFF) - 2 * (row[x - 1] & 0xFF) - (below[x - 1] & 0xFF);
+				int dy = (below[x - 1] & 0xFF) + 2 * (below[x] & 0xFF) + (below[x + 1] & 0xFF)
+						- (above[x - 1] & 0xFF) - 2 * (above[x] & 0xFF) - (above[x + 1] & 0xFF);
+				energies[offset + x] = energy(dx, dy);
+			}
+
+			// The edge columns, without the branches in the loop above.
+			if (from == 0)
+				energies[offset] = edgeEnergy(above, row, below, width, 0);
+			if (to == width && from < width && width > 1)
+				energies[offset + width - 1] = edgeEnergy(above, row, below, width, width - 1);
+		}
+
+		private static long edgeEnergy(int[] above, int[] row, int[] below, int width, int x) {
+			int left = Math.max(0, x - 1);
+			int right = Math.min(width - 1, x + 1);
+			int dx = (above[right] & 0xFF) + 2 * (row[right] & 0xFF) + (below[right] & 0xFF)
+					- (above[left] & 0xFF) - 2 * (row[left] & 0xFF) - (below[left] & 0xFF);
+			int dy = (below[left] & 0xFF) + 2 * (below[x] & 0xFF) + (below[right] & 0xFF)
+					- (above[left] & 0xFF) - 2 * (above[x] & 0xFF) - (above[right] & 0xFF);
+			return energy(dx, dy);
+		}
+
+		// A Sobel derivative weighs 4 differences, so its sum is scaled back to grey level steps.
+		private static long energy(int dx, int dy) {
+			return (Math.abs(dx) + Math.abs(dy)) * GREY_STEP >> 2;
+		}
+	}
+
+	// MARK: The gradient, plus the entropy of the grey levels in a window around each pixel.
+	public static class Entropy implements EnergyFunction {
+		// Number of the histogram bins of the grey levels.
+		private static final int BINS = 16;
+
+		private final int windowRadius;
+		private final double[] countLogCount; // c * ln(c) of each count c of a window.
+
+		/**
+		 * @param windowRadius - number of pixels on each side of the window center.
+		 */
+		public Entropy(int windowRadius) {
+			if (windowRadius < 1)
+				throw new IllegalArgumentException("Entropy window radius must be positive");
+
+			this.windowRadius = windowRadius;
+			int size = (2 * windowRadius + 1) * (2 * windowRadius + 1);
+			countLogCount = new double[size + 1];
+			for (int c = 1; c <= size; c++)
+				countLogCount[c] = c * Math.log(c);
+		}
+
+		@Override
+		public int radius() {
+			return windowRadius;
+		}
+
+		// The entropy is at most the one of a uniform histogram.
+		@Override
+		public long maxEnergy() {
+			return GRADIENT.maxEnergy() + 255L * GREY_STEP;
+		}
+
+		@Override
+		public void rowEnergies(int[][] values, int width, int height, int y, int from, int to,
+				long[] energies, int offset) {
+			GRADIENT.rowEnergies(values, width, height, y, from, to, energies, offset);
+			if (from >= to)
+				return;
+
+			// The window slides along the row, and is clipped by the image edges.
+			int fromY = Math.max(0, y - windowRadius);
+			int toY = Math.min(height - 1, y + windowRadius);
+			int[] histogram = new int[BINS];
+			int count = 0;
+			for (int x = Math.max(0, from - windowRadius); x <= Math.min(width - 1, from + windowRadius); x++)
+				count += addColumn(values, histogram, x, fromY, toY, 1);
+
+			// The entropy is scaled so that a uniform histogram weighs as the largest grey level step.
+			double scale = 255.0 * GREY_STEP / Math.log(BINS);
+			for (int x = from; x < to; x++) {
+				double sum = 0;
+				for (int bin = 0; bin < BINS; bin++)
+					sum += countLogCount[histogram[bin]];
+				double entropy = Math.log(count) - sum / count;
+				energies[offset + x] += (long) (entropy * scale);
+
+				if (x - windowRadius >= 0)
+					count -= addColumn(values, histogram, x - windowRadius, fromY, toY, -1);
+				if (x + windowRadius + 1 < width)
+					count += addColumn(values, histogram, x + windowRadius + 1, fromY, toY, 1);
+			}
+		}
+
+		// Adds (or removes) the pixels of a column of the window, and returns their number.
+		private static int addColumn(int[][] values, int[] histogram, int x, int fromY, int toY, int delta) {
+			for (int y = fromY; y <= toY; y++)
+				histogram[(values[y][x] & 0xFF) * BINS >> 8] += delta;
+			return toY - fromY + 1;
+		}
+	}
+
+	// MARK: The values of a given map.
+	public static class SaliencyMap implements EnergyFunction {
+		private final int[][] saliency;
+		private final long maxEnergy;
+
+		public SaliencyMap(int[][] saliency) {
+			if (saliency == null)
+				throw new NullPointerException("Saliency map can not be null");
+
+			this.saliency = saliency;
+			int max = 0;
+			for (int[] row : saliency)
+				for (int value : row)
+					max = Math.max(max, value);
+			maxEnergy = (long) max * GREY_STEP;
+		}
+
+		@Override
+		public int radius() {
+			return 0;
+		}
+
+		@Override
+		public long maxEnergy() {
+			return maxEnergy;
+		}
+
+		@Override
+		public void rowEnergies(int[][] values, int width, int height, int y, int from, int to,
+				long[] energies, int offset) {
+			int[] row = values[y];
+			for (int x = from; x < to; x++)
+				energies[offset + x] = (long) row[x] * GREY_STEP;
+		}
+
+		@Override
+		public int[][] input() {
+			return saliency;
+		}
+
+		@Override
+		public EnergyFunction withInput(int[][] input) {
+			return new SaliencyMap(input);
+		}
+	}
+}
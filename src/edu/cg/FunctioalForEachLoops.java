@@ -2,12 +2,33 @@ package edu.cg;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.function.BiConsumer;
-import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public abstract class FunctioalForEachLoops {
+	// MARK: Primitive functional interfaces, so iterating does not box the coordinates.
+	@FunctionalInterface
+	public interface IntBiConsumer {
+		void accept(int y, int x);
+	}
+
+	@FunctionalInterface
+	public interface RowConsumer {
+		void accept(int y, int width);
+	}
+
+	@FunctionalInterface
+	public interface RangeConsumer {
+		void accept(int from, int to);
+	}
+
+	// Number of chunks per pool thread, so uneven chunks are balanced by work stealing.
+	private static final int CHUNKS_PER_THREAD = 4;
+	
 	private int width;
 	private int height;
+	private ForkJoinPool pool;
 	
 	private class Params {
 		public final int width, height;
@@ -25,9 +46,36 @@ public abstract class FunctioalForEachLoops {
 	
 	private Deque<Params> stack;
 	
+	// Splits a range into chunks, which are handed over to the pool.
+	@SuppressWarnings("serial")
+	private static class RangeTask extends RecursiveAction {
+		private final int from, to, chunkSize;
+		private final RangeConsumer action;
+		
+		RangeTask(int from, int to, int chunkSize, RangeConsumer action) {
+			this.from = from;
+			this.to = to;
+			this.chunkSize = chunkSize;
+			this.action = action;
+		}
+		
+		@Override
+		protected void compute() {
+			if(to - from <= chunkSize) {
+				action.accept(from, to);
+				return;
+			}
+			
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(from, mid, chunkSize, action),
+					new RangeTask(mid, to, chunkSize, action));
+		}
+	}
+	
 	public FunctioalForEachLoops() {
 		width = height = 0;
 		stack = new ArrayDeque<>();
+		pool = null;
 	}
 	
 	public final void setForEachParameters(int width, int height) {
@@ -51,6 +99,15 @@ public abstract class FunctioalForEachLoops {
 		return height;
 	}
 	
+	// Sets the pool used by the parallel loops; null means they run sequentially.
+	public final void setForEachPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+	
+	public final ForkJoinPool getForEachPool() {
+		return pool;
+	}
+	
 	public final void pushForEachParameters() {
 		stack.push(new Params());
 	}
@@ -59,20 +116,69 @@ public abstract class FunctioalForEachLoops {
 		stack.pop().restoreParams();
 	}
 	
-	public final void forEach(BiConsumer<Integer, Integer> action) {
-		forEachHeight(y ->
-			forEachWidth(x ->
-				action.accept(y, x)
-			)
-		);
+	public final void forEach(IntBiConsumer action) {
+		forEach(0, height, action);
+	}
+	
+	// Iterates the rows in the range [fromY, toY).
+	public final void forEach(int fromY, int toY, IntBiConsumer action) {
+		int width = this.width;
+		for(int y = fromY; y < toY; ++y)
+			for(int x = 0; x < width; ++x)
+				action.accept(y, x);
+	}
+	
+	// Hands over a whole row at a time, along with the current width.
+	public final void forEachRow(RowConsumer action) {
+		forEachRow(0, height, action);
+	}
+	
+	// Hands over the rows in the range [fromY, toY), one at a time.
+	public final void forEachRow(int fromY, int toY, RowConsumer action) {
+		int width = this.width;
+		for(int y = fromY; y < toY; ++y)
+			action.accept(y, width);
+	}
+	
+	// Like forEach, but the rows are split into bands which are run on the pool.
+	// The action must be safe to run concurrently on different rows.
+	public final void parallelForEach(IntBiConsumer action) {
+		parallelForEachRow((y, width) -> {
+			for(int x = 0; x < width; ++x)
+				action.accept(y, x);
+		});
+	}
+	
+	// Like forEachRow, but the rows are split into bands which are run on the pool.
+	// The action must be safe to run concurrently on different rows.
+	public final void parallelForEachRow(RowConsumer action) {
+		int width = this.width;
+		parallelForRange(0, height, 1, (fromY, toY) -> {
+			for(int y = fromY; y < toY; ++y)
+				action.accept(y, width);
+		});
+	}
+	
+	// Splits the range [from, to) into chunks of at least minChunk, which are run on the pool.
+	// Returns only after all the chunks are done, so it may serve as a barrier.
+	public final void parallelForRange(int from, int to, int minChunk, RangeConsumer action) {
+		ForkJoinPool pool = this.pool;
+		int parallelism = pool == null ? 1 : pool.getParallelism();
+		int chunkSize = Math.max(Math.max(1, minChunk), (to - from) / (parallelism * CHUNKS_PER_THREAD));
+		if(parallelism < 2 || to - from <= chunkSize) {
+			action.accept(from, to);
+			return;
+		}
+		
+		pool.invoke(new RangeTask(from, to, chunkSize, action));
 	}
 	
-	public final void forEachWidth(Consumer<Integer> action) {
+	public final void forEachWidth(IntConsumer action) {
 		for(int x = 0; x < width; ++x)
 			action.accept(x);
 	}
 	
-	public final void forEachHeight(Consumer<Integer> action) {
+	public final void forEachHeight(IntConsumer action) {
 		for(int y = 0; y < height; ++y)
 			action.accept(y);
 	}
@@ -1,9 +1,14 @@
 package edu.cg;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 
 public class ImageProcessor extends FunctioalForEachLoops {
+	// MARK: Pools shared by all the processors, by their parallelism.
+	private static final Map<Integer, ForkJoinPool> pools = new ConcurrentHashMap<>();
+
 	// MARK: fields
 	public final Logger logger;
 	public final BufferedImage workingImage;
@@ -13,6 +18,7 @@ public class ImageProcessor extends FunctioalForEachLoops {
 	public final int workingImageType;
 	public final int outWidth;
 	public final int outHeight;
+	private PixelBuffer workingPixels; // The working image pixels, read on first use.
 
 	// MARK: constructors
 	public ImageProcessor(Logger logger, BufferedImage workingImage, RGBWeights rgbWeights, int outWidth,
@@ -28,6 +34,7 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		this.outWidth = outWidth;
 		this.outHeight = outHeight;
 		setForEachInputParameters();
+		setForEachPool(ForkJoinPool.commonPool());
 	}
 
 	public ImageProcessor(Logger logger, BufferedImage workingImage, RGBWeights rgbWeights) {
@@ -43,20 +50,39 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		int b = rgbWeights.blueWeight;
 		int max = rgbWeights.maxWeight;
 
-		BufferedImage ans = newEmptyInputSizedImage();
-
-		forEach((y, x) -> {
-			Color c = new Color(workingImage.getRGB(x, y));
-			int red = r * c.getRed() / max;
-			int green = g * c.getGreen() / max;
-			int blue = b * c.getBlue() / max;
-			Color color = new Color(red, green, blue);
-			ans.setRGB(x, y, color.getRGB());
+		PixelBuffer src = workingPixels();
+		PixelBuffer ans = new PixelBuffer(inWidth, inHeight);
+
+		parallelForEachRow((y, width) -> {
+			int offset = src.rowOffset(y);
+			for (int x = 0; x < width; x++) {
+				int c = src.pixels[offset + x];
+				int red = r * PixelBuffer.red(c) / max;
+				int green = g * PixelBuffer.green(c) / max;
+				int blue = b * PixelBuffer.blue(c) / max;
+				ans.pixels[offset + x] = PixelBuffer.rgb(red, green, blue);
+			}
 		});
 
 		logger.log("Changing hue done!");
 
-		return ans;
+		return newImage(ans);
+	}
+
+	// Sets the number of threads the per-pixel operations are split among.
+	// A parallelism of 1 runs them on the calling thread.
+	public final void setParallelism(int parallelism) {
+		if (parallelism <= 1)
+			setForEachPool(null);
+		else if (parallelism == ForkJoinPool.getCommonPoolParallelism())
+			setForEachPool(ForkJoinPool.commonPool());
+		else
+			setForEachPool(pools.computeIfAbsent(parallelism, ForkJoinPool::new));
+	}
+
+	public final int getParallelism() {
+		ForkJoinPool pool = getForEachPool();
+		return pool == null ? 1 : pool.getParallelism();
 	}
 
 	// Sets the ForEach parameters with the input dimensions
@@ -84,13 +110,31 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		return new BufferedImage(width, height, workingImageType);
 	}
 
-	// A helper method that deep copies the current working image.
-	public final BufferedImage duplicateWorkingImage() {
-		BufferedImage output = newEmptyInputSizedImage();
+	// A helper method that returns the pixels of the working image.
+	// The image is read once, so the returned buffer must not be modified.
+	public final PixelBuffer workingPixels() {
+		if (workingPixels == null)
+			workingPixels = PixelBuffer.of(workingImage);
+
+		return workingPixels;
+	}
 
-		forEach((y, x) -> output.setRGB(x, y, workingImage.getRGB(x, y)));
+	// A helper method that creates an image of the working image type from the given pixels.
+	public final BufferedImage newImage(PixelBuffer pixels) {
+		return newImage(pixels, pixels.width, pixels.height);
+	}
 
-		return output;
+	// A helper method that creates an image of the specified dimensions
+	// from the top left part of the given pixels.
+	public final BufferedImage newImage(PixelBuffer pixels, int width, int height) {
+		BufferedImage img = newEmptyImage(width, height);
+		pixels.writeTo(img);
+		return img;
+	}
+
+	// A helper method that deep copies the current working image.
+	public final BufferedImage duplicateWorkingImage() {
+		return newImage(workingPixels());
 	}
 	
 	public BufferedImage greyscale() {
@@ -101,19 +145,22 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		int g = rgbWeights.greenWeight;
 		int b = rgbWeights.blueWeight;
 
-		BufferedImage ans = newEmptyInputSizedImage();
+		PixelBuffer src = workingPixels();
+		PixelBuffer ans = new PixelBuffer(inWidth, inHeight);
 
-		forEach((y, x) -> {
-			Color c = new Color(workingImage.getRGB(x, y));
-			int greyCol = (c.getRed() * r) + (c.getGreen() * g) + (c.getBlue() * b);
-			greyCol = greyCol / (r + g + b);
+		parallelForEachRow((y, width) -> {
+			int offset = src.rowOffset(y);
+			for (int x = 0; x < width; x++) {
+				int c = src.pixels[offset + x];
+				int greyCol = (PixelBuffer.red(c) * r) + (PixelBuffer.green(c) * g) + (PixelBuffer.blue(c) * b);
+				greyCol = greyCol / (r + g + b);
 
-			Color res = new Color(greyCol, greyCol, greyCol);
-			ans.setRGB(x, y, res.getRGB());
+				ans.pixels[offset + x] = PixelBuffer.rgb(greyCol, greyCol, greyCol);
+			}
 		});
 
 		logger.log("Changing to greyscale done!");
-		return ans;
+		return newImage(ans);
 	}
 
 	public BufferedImage nearestNeighbor() {
@@ -122,23 +169,28 @@ public class ImageProcessor extends FunctioalForEachLoops {
 		double widthRatio = (double) inWidth / outWidth;
 		double heightRatio = (double) inHeight / outHeight;
 
-		// Create a new image by the desired resize dimensions.
-		BufferedImage ans = newEmptyOutputSizedImage();
+		// Create new pixels by the desired resize dimensions.
+		PixelBuffer src = workingPixels();
+		PixelBuffer ans = new PixelBuffer(outWidth, outHeight);
 		setForEachOutputParameters();
 
-		forEach((y, x) -> {
-			double tempCol = x * widthRatio;
-			double tempRow = y * heightRatio;
-
+		parallelForEachRow((y, width) -> {
 			// Avoid up rounding the borders.
-			int col = (x < outWidth - 1) ? (int) Math.round(tempCol) : (int) tempCol;
+			double tempRow = y * heightRatio;
 			int row = (y < outHeight - 1) ? (int) Math.round(tempRow) : (int) tempRow;
-			Color c = new Color(workingImage.getRGB(col, row));
-			ans.setRGB(x,y, c.getRGB());
+			int srcOffset = src.rowOffset(row);
+			int offset = ans.rowOffset(y);
+
+			for (int x = 0; x < width; x++) {
+				double tempCol = x * widthRatio;
+				int col = (x < outWidth - 1) ? (int) Math.round(tempCol) : (int) tempCol;
+				// The result is opaque, as the alpha is dropped.
+				ans.pixels[offset + x] = src.pixels[srcOffset + col] | 0xFF000000;
+			}
 		});
 
 		logger.log("Resizing according to nearest neighbor done!");
-		return ans;
+		return newImage(ans);
 	}
 
 }
@@ -1,9 +1,60 @@
 package edu.cg;
 
 public interface Logger {
+	// MARK: Levels of the messages, from the most detailed one.
+	public enum Level { DEBUG, INFO, ERROR }
+
+	// A logger which discards all the messages.
+	public static final Logger NONE = new Logger() {
+		@Override
+		public void log(String s) {
+		}
+
+		@Override
+		public boolean isLoggable(Level level) {
+			return false;
+		}
+	};
+
 	public void log(String s);
 	
 	public default void log(Object obj) {
 		log(obj == null ? "null" : obj.toString());
 	}
+
+	/**
+	 * Logs a message of a given level.
+	 * Messages which are built in hot loops should be logged only if their level is loggable.
+	 */
+	public default void log(Level level, String s) {
+		if (isLoggable(level))
+			log(s);
+	}
+
+	public default boolean isLoggable(Level level) {
+		return true;
+	}
+
+	/**
+	 * Returns a logger which adds a given prefix to the messages of a given logger.
+	 */
+	public static Logger prefixed(Logger logger, String prefix) {
+		return new Logger() {
+			@Override
+			public void log(String s) {
+				logger.log(prefix + s);
+			}
+
+			@Override
+			public void log(Level level, String s) {
+				if (logger.isLoggable(level))
+					logger.log(level, prefix + s);
+			}
+
+			@Override
+			public boolean isLoggable(Level level) {
+				return logger.isLoggable(level);
+			}
+		};
+	}
 }
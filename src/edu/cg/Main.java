@@ -1,12 +1,19 @@
 package edu.cg;
+import edu.cg.cli.BatchMain;
 import edu.cg.menu.MenuWindow;
 
 public class Main {
 	
 	/**
 	 * Launch the application.
+	 * With arguments, the headless batch application is run instead of the menu window.
 	 */
 	public static void main(String[] args) {
+		if (args.length > 0) {
+			BatchMain.main(args);
+			return;
+		}
+
 		MenuWindow mw = new MenuWindow();
 		mw.setVisible(true);
 	}
@@ -0,0 +1,191 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+
+import edu.cg.SeamsCarver.Direction;
+
+/**
+ * Removes an object from an image by seam carving.
+ * The image is reduced by seams through the masked object until no masked pixel is
+ * left, and is then increased back to its original width.
+ * The reduction is done in rounds, each one removing as many seams as the fullest
+ * row of the object still has masked pixels (as a seam removes at most one pixel of
+ * each row), so the rounds stop as soon as the object is gone. The seams of a round
+ * are only searched for in a corridor of columns around the object, and all the
+ * rounds share the working buffers.
+ */
+public class ObjectRemover extends ImageProcessor {
+	// Minimal number of columns the search corridor extends beyond each side of the object.
+	private static final int MIN_SEARCH_MARGIN = 16;
+
+	// MARK: The extent of the masked pixels.
+	private static class MaskExtent {
+		int maxRowCount; // Maximal number of masked pixels in a row.
+		int from;        // First masked column.
+		int to;          // Last masked column.
+	}
+
+	// MARK: Fields
+	private final Logger carverLogger; // The logger the carvers report to.
+	private final boolean[][] objectMask; // Represents the pixels of the object to remove.
+	private final boolean[][] imageMask;  // Represents the mask the image is increased back with.
+	private boolean[][] keepMask;         // Represents the pixels the seams avoid (may be null).
+	private EnergyFunction energy;        // Calculates the energies of the pixels.
+	private final CarvingMetrics metrics; // The metrics of all the carvers.
+	private Progress progress;            // Receives the number of seams carved.
+	private CarvingWorkspace.Pool workspaces; // Lends the workspace of the carvers.
+	private CarvingWorkspace workspace;       // The workspace all the carvers of a removal share.
+
+	/**
+	 * @param objectMask - the pixels of the object to remove.
+	 * @param imageMask - the mask the reduced image is increased back with.
+	 */
+	public ObjectRemover(Logger logger, BufferedImage workingImage, RGBWeights rgbWeights,
+			boolean[][] objectMask, boolean[][] imageMask) {
+		super(Logger.prefixed(logger, "Object removal: "), workingImage, rgbWeights);
+
+		carverLogger = logger;
+		this.objectMask = objectMask;
+		this.imageMask = imageMask;
+		metrics = new CarvingMetrics();
+		progress = Progress.NONE;
+		energy = EnergyFunction.GRADIENT;
+		workspaces = new CarvingWorkspace.Pool(1);
+	}
+
+	/**
+	 * Sets the progress which receives the number of seams carved, and which may cancel
+	 * the removal between seams.
+	 * The total number of seams is estimated as twice the number of masked pixels in
+	 * the fullest row, as the image is increased back by the number of removed seams.
+	 */
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Sets the pixels which the seams avoid, both while the object is removed and while
+	 * the image is increased back (null if there are none).
+	 * A pixel of the object is removed even if it is protected.
+	 */
+	public void setKeepMask(boolean[][] keepMask) {
+		this.keepMask = keepMask;
+	}
+
+	/**
+	 * Sets the function the energies of the pixels are calculated with.
+	 */
+	public void setEnergyFunction(EnergyFunction energy) {
+		this.energy = energy;
+	}
+
+	/**
+	 * Sets the pool the workspace of the carvers is borrowed from, for the whole removal.
+	 */
+	public void setWorkspacePool(CarvingWorkspace.Pool workspaces) {
+		this.workspaces = workspaces;
+	}
+
+	public BufferedImage removeObject() {
+		workspace = workspaces.borrow();
+		try {
+			return this.removeObjectWithWorkspace();
+		} finally {
+			workspaces.release(workspace);
+			workspace = null;
+		}
+	}
+
+	private BufferedImage removeObjectWithWorkspace() {
+		BufferedImage result = duplicateWorkingImage();
+		boolean[][] tempMask = duplicateMask(objectMask);
+		boolean[][] tempKeepMask = keepMask;
+		EnergyFunction tempEnergy = energy;
+
+		MaskExtent extent = maskExtent(tempMask);
+		int rounds = 0;
+		while (extent.maxRowCount > 0) {
+			// Bound the number of seams to reduce in each use of
+			// the seam carver, by the width of the current image.
+			int width = result.getWidth();
+			int numOfSeamsToReduce = Math.max(1, Math.min(extent.maxRowCount, (width / 3) - 1));
+			if (width - numOfSeamsToReduce < 2)
+				throw new RuntimeException("Can not remove object: it covers the whole image...");
+
+			SeamsCarver sc = carver(result, width - numOfSeamsToReduce, tempMask, tempKeepMask, tempEnergy);
+			int margin = Math.max(MIN_SEARCH_MARGIN, extent.to - extent.from + 1);
+			sc.setSearchRange(Math.max(0, extent.from - margin), Math.min(width - 1, extent.to + margin));
+			int removed = inWidth - width;
+			sc.setProgress(Progress.part(progress, removed, 2 * (removed + extent.maxRowCount)));
+
+			// Reduce the image and get the updated mask.
+			result = sc.resize();
+			tempMask = sc.getMaskAfterSeamCarving();
+			if (tempKeepMask != null)
+				tempKeepMask = sc.getKeepMaskAfterSeamCarving();
+			tempEnergy = sc.getEnergyFunctionAfterSeamCarving();
+			metrics.add(sc.getMetrics());
+			extent = maskExtent(tempMask);
+			rounds++;
+		}
+		logger.log("Removed the object in " + rounds + " rounds.");
+
+		// Increase the image back to it's original size.
+		SeamsCarver sc = carver(result, inWidth, duplicateMask(imageMask), tempKeepMask, tempEnergy);
+		int removed = inWidth - result.getWidth();
+		sc.setProgress(Progress.part(progress, removed, 2 * removed));
+		result = sc.resize();
+		metrics.add(sc.getMetrics());
+		logger.log("Done removing object.");
+		logger.log("Metrics: " + metrics);
+		return result;
+	}
+
+	/**
+	 * Returns the timing and counters of all the carvers of the removal.
+	 */
+	public CarvingMetrics getMetrics() {
+		return metrics;
+	}
+
+	private SeamsCarver carver(BufferedImage img, int outWidth, boolean[][] mask, boolean[][] keep,
+			EnergyFunction energy) {
+		SeamsCarver sc = new SeamsCarver(carverLogger, img, outWidth, rgbWeights, mask, keep, Direction.VERTICAL);
+		sc.setForEachPool(getForEachPool());
+		sc.setEnergyFunction(energy);
+		sc.setWorkspace(workspace);
+		return sc;
+	}
+
+	private static boolean[][] duplicateMask(boolean[][] mask) {
+		boolean[][] cpyMask = new boolean[mask.length][];
+		for (int i = 0; i < mask.length; i++)
+			cpyMask[i] = mask[i].clone();
+		return cpyMask;
+	}
+
+	/**
+	 * Finds the maximum number of true values per row in a given mask,
+	 * and the columns of the true values.
+	 * @param mask - matrix of booleans.
+	 */
+	private static MaskExtent maskExtent(boolean[][] mask) {
+		MaskExtent extent = new MaskExtent();
+		extent.from = Integer.MAX_VALUE;
+		extent.to = -1;
+		for (boolean[] row : mask) {
+			int currentRowCounter = 0;
+			for (int x = 0; x < row.length; x++) {
+				if (row[x]) {
+					currentRowCounter++;
+					extent.from = Math.min(extent.from, x);
+					extent.to = Math.max(extent.to, x);
+				}
+			}
+
+			if (currentRowCounter > extent.maxRowCount) extent.maxRowCount = currentRowCounter;
+		}
+
+		return extent;
+	}
+}
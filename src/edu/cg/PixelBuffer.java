@@ -0,0 +1,138 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+
+/**
+ * Represents the pixels of an image as packed ARGB values in a single
+ * row-major int array.
+ * An image is read into the buffer at once, all the pixel operations work
+ * on the array, and the result is written back to an image at once.
+ */
+public class PixelBuffer {
+	public final int width;
+	public final int height;
+	public final int[] pixels;
+
+	public PixelBuffer(int width, int height) {
+		this.width = width;
+		this.height = height;
+		pixels = new int[width * height];
+	}
+
+	/**
+	 * Wraps a given array, which may be longer than the pixels.
+	 */
+	public PixelBuffer(int width, int height, int[] pixels) {
+		if (pixels.length < width * height)
+			throw new IllegalArgumentException("Pixels array is too short");
+
+		this.width = width;
+		this.height = height;
+		this.pixels = pixels;
+	}
+
+	/**
+	 * Reads all the pixels of a given image.
+	 * Packed int images are read straight from their raster, other types
+	 * are converted by a single bulk call.
+	 */
+	public static PixelBuffer of(BufferedImage img) {
+		PixelBuffer buffer = new PixelBuffer(img.getWidth(), img.getHeight());
+		int[] pixels = buffer.pixels;
+
+		switch (img.getType()) {
+		case BufferedImage.TYPE_INT_ARGB:
+			img.getRaster().getDataElements(0, 0, buffer.width, buffer.height, pixels);
+			break;
+
+		case BufferedImage.TYPE_INT_RGB:
+			img.getRaster().getDataElements(0, 0, buffer.width, buffer.height, pixels);
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] |= 0xFF000000;
+			break;
+
+		default:
+			img.getRGB(0, 0, buffer.width, buffer.height, pixels, 0, buffer.width);
+			break;
+		}
+
+		return buffer;
+	}
+
+	// MARK: Helpers for packed ARGB values.
+	public static int red(int argb) {
+		return (argb >> 16) & 0xFF;
+	}
+
+	public static int green(int argb) {
+		return (argb >> 8) & 0xFF;
+	}
+
+	public static int blue(int argb) {
+		return argb & 0xFF;
+	}
+
+	// Packs the given components into an opaque ARGB value.
+	public static int rgb(int red, int green, int blue) {
+		return 0xFF000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	public final int get(int x, int y) {
+		return pixels[y * width + x];
+	}
+
+	public final void set(int x, int y, int argb) {
+		pixels[y * width + x] = argb;
+	}
+
+	// Returns the index of the first pixel of a given row.
+	public final int rowOffset(int y) {
+		return y * width;
+	}
+
+	public final PixelBuffer duplicate() {
+		PixelBuffer dup = new PixelBuffer(width, height);
+		System.arraycopy(pixels, 0, dup.pixels, 0, width * height);
+		return dup;
+	}
+
+	/**
+	 * Writes the pixels to a given image.
+	 * The image may be narrower or shorter than the buffer, in which case
+	 * only its top left part of the buffer is written.
+	 */
+	public void writeTo(BufferedImage img) {
+		int w = img.getWidth();
+		int h = img.getHeight();
+		int type = img.getType();
+
+		if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_RGB) {
+			img.setRGB(0, 0, w, h, pixels, 0, width);
+			return;
+		}
+
+		WritableRaster raster = img.getRaster();
+		if (type == BufferedImage.TYPE_INT_ARGB && w == width) {
+			raster.setDataElements(0, 0, w, h, pixels);
+			return;
+		}
+
+		// Write row by row, dropping the alpha of RGB images.
+		int alphaMask = (type == BufferedImage.TYPE_INT_RGB) ? 0x00FFFFFF : 0xFFFFFFFF;
+		int[] row = new int[w];
+		for (int y = 0; y < h; y++) {
+			int offset = y * width;
+			for (int x = 0; x < w; x++)
+				row[x] = pixels[offset + x] & alphaMask;
+			raster.setDataElements(0, y, w, 1, row);
+		}
+	}
+
+	// Creates an image of a given type and writes the pixels to it.
+	public BufferedImage toImage(int type) {
+		BufferedImage img = new BufferedImage(width, height, type);
+		writeTo(img);
+		return img;
+	}
+}
@@ -0,0 +1,42 @@
+package edu.cg;
+
+/**
+ * Receives the progress of a long operation, and tells it whether to stop.
+ * A cancelled operation stops at its next progress step by throwing a
+ * java.util.concurrent.CancellationException.
+ */
+public interface Progress {
+	// A progress which is never cancelled.
+	public static final Progress NONE = new Progress() {
+		@Override
+		public void update(int done, int total) {
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+	};
+
+	public void update(int done, int total);
+
+	public boolean isCancelled();
+
+	/**
+	 * Returns the progress of a part of an operation, which starts after a given
+	 * number of steps of a given total.
+	 */
+	public static Progress part(Progress progress, int before, int total) {
+		return new Progress() {
+			@Override
+			public void update(int done, int partTotal) {
+				progress.update(before + done, Math.max(total, before + partTotal));
+			}
+
+			@Override
+			public boolean isCancelled() {
+				return progress.isCancelled();
+			}
+		};
+	}
+}
@@ -1,30 +1,30 @@
 package edu.cg;
 
-import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+
+import edu.cg.Logger.Level;
 
 public class SeamsCarver extends ImageProcessor {
-	private enum path {L, V, R};
+	// MARK: Parent directions of a cost matrix entry,
+	// which are also the column offsets towards the parent.
+	private static final byte PARENT_L = -1;
+	private static final byte PARENT_V = 0;
+	private static final byte PARENT_R = 1;
 
-	/**
-	 * Represent a greyscale pixel with it's associated
-	 * energy and the parent direction.
-	 */
-	private static class EnergyPixel {
-		private long energy;
-		private path parent;
+	// Minimal number of columns in a chunk of a row which is calculated in parallel.
+	private static final int MIN_COLUMNS_CHUNK = 256;
 
-		EnergyPixel(long e) {
-			this.energy = e;
-		}
+	// Cost of the cost matrix entries outside the search corridor.
+	private static final long UNREACHABLE = Long.MAX_VALUE / 4;
 
-		// Getters and setters for parent and energy
-		public long getEnergy() { return this.energy; }
-		public void setEnergy(long e) { this.energy = e; }
-		public path getParent() { return this.parent; }
-		public void setParent(path p) { this.parent = p; }
-	}
+	// Largest forward cost of an edge, between the greyscale values of black and white.
+	private static final long MAX_EDGE_COST = 255L * EnergyFunction.GREY_STEP;
 
 	// MARK: An inner interface for functional programming.
 	@FunctionalInterface
@@ -32,177 +32,849 @@ public class SeamsCarver extends ImageProcessor {
 		BufferedImage resize();
 	}
 
+	// MARK: Direction of the seams.
+	public enum Direction { VERTICAL, HORIZONTAL }
+
 	// MARK: Fields
+	// The carving is done in a frame where the seams are vertical.
+	// For horizontal seams, the frame is the image rotated clockwise, that is
+	// frame (x, y) is image (y, frameWidth - 1 - x). The frame is only used
+	// for indexing, the image itself is never rotated.
+	private final Direction direction;
+	private final Logger carverLogger; // The logger the carvers of the enlargement stages report to.
+	private final int frameWidth;
+	private final int frameHeight;
+	private final int frameOutWidth;
+	private int carvedWidth;    // Frame width of the carved image (of the last step, when reducing by steps).
 	private int numOfSeams;
 	private ResizeOperation resizeOp;
-	boolean[][] imageMask;
+	SparseMask imageMask;       // Represents the mask, in frame coordinates.
+	SparseMask keepMask;        // Represents the protected pixels, in frame coordinates.
 	int[][] greyscale;	        // Represents the greyscale values of the image.
-	EnergyPixel[][] costMatrix; // Represents the dynamic cost matrix.
+	int[][] energyValues;       // Represents the values the energies are calculated from (the greyscale values, or the input of the energy function).
+	private EnergyFunction energy;        // Calculates the energies of the pixels.
+	private EnergyFunction carvedEnergy;  // The energy function of the carved image.
+	long[] energies;            // Represents the pixel energies the cost matrix is built upon.
+	long[] costMatrix;          // Represents the dynamic cost matrix.
+	byte[] parents;             // Represents the parent direction of each entry in the cost matrix.
+	int stride;                 // Row length of the (row-major) energies, cost matrix and parents arrays.
 	int k; 				        // Number of seams that were handled so far.
 	boolean opReduce; 	        // Helper flag to indicate if the current is 'reduce' operation.
-	BufferedImage tempImg;      // Helper temporary buffered image used in 'reduce' operation.
-	int[][] shiftedSeams;       // Represents the indexes of the seams in relation to the dynamic cost matrix.
-	int[][] increasedSeams;     // Represents the indexes of the seams in the increased image.
+	PixelBuffer tempImg;        // Helper temporary pixels used in 'reduce' operation.
+	int[] originalColumns;      // Represents the original column of each entry of the cost matrix (same layout).
+	boolean incrementalUpdate;  // Helper flag to indicate if only the area around a removed seam is recalculated.
+	int batchSize;              // Maximal number of seams that are taken from a single cost matrix.
+	double batchTolerance;      // How much more than the cheapest seam of a batch its other seams may cost (relatively).
+	int pyramidScale;           // Downsampling factor of the coarse search level (1 means the exact search).
+	int pyramidMargin;          // Number of columns the search corridor is widened by on each side.
+	int searchFrom;             // First column the search is restricted to (in the frame).
+	int searchTo;               // Last column the search is restricted to (-1 for no restriction).
+	int[] corridorFrom;         // First column of the search corridor in each row (null for the exact search).
+	int[] corridorTo;           // Last column of the search corridor in each row.
+	int corridorSeams;          // Number of seams left to find before the corridor is rebuilt.
+	boolean costMatrixReady;    // Helper flag to indicate if the cost matrix of the first seam is already calculated.
+	final CarvingMetrics metrics; // Timing of the carving phases and counters of their work.
+	private CarvingWorkspace workspace; // Lends the working buffers.
+	private Progress progress;    // Receives the number of seams found, and may cancel the carving.
 
 	public SeamsCarver(Logger logger, BufferedImage workingImage, int outWidth, RGBWeights rgbWeights,
 			boolean[][] imageMask) {
-		super((s) -> logger.log("Seam carving: " + s), workingImage, rgbWeights, outWidth, workingImage.getHeight());
+		this(logger, workingImage, outWidth, rgbWeights, imageMask, Direction.VERTICAL);
+	}
+
+	/**
+	 * Creates a seams carver in a given direction.
+	 * @param outSize - the output width for vertical seams, or the output height for horizontal seams.
+	 */
+	public SeamsCarver(Logger logger, BufferedImage workingImage, int outSize, RGBWeights rgbWeights,
+			boolean[][] imageMask, Direction direction) {
+		this(logger, workingImage, outSize, rgbWeights, imageMask, null, direction);
+	}
 
-		numOfSeams = Math.abs(outWidth - inWidth);
-		this.imageMask = imageMask;
-		if (inWidth < 2 | inHeight < 2)
+	/**
+	 * Creates a seams carver in a given direction, which keeps the protected pixels.
+	 * Seams go through the masked pixels, and avoid the protected ones as long as
+	 * any other seam is left: the energy of a protected pixel is more than the cost
+	 * of any seam of unprotected pixels, so a seam crosses as few protected pixels
+	 * as it can. A pixel which is both masked and protected is masked.
+	 * @param imageMask - the pixels the seams go through (null if there are none).
+	 * @param keepMask - the pixels the seams avoid (null if there are none).
+	 */
+	public SeamsCarver(Logger logger, BufferedImage workingImage, int outSize, RGBWeights rgbWeights,
+			boolean[][] imageMask, boolean[][] keepMask, Direction direction) {
+		super(Logger.prefixed(logger, "Seam carving: "), workingImage, rgbWeights,
+				direction == Direction.VERTICAL ? outSize : workingImage.getWidth(),
+				direction == Direction.VERTICAL ? workingImage.getHeight() : outSize);
+
+		this.direction = direction;
+		carverLogger = logger;
+		boolean vertical = direction == Direction.VERTICAL;
+		frameWidth = vertical ? inWidth : inHeight;
+		frameHeight = vertical ? inHeight : inWidth;
+		frameOutWidth = outSize;
+		carvedWidth = outSize;
+		setForEachParameters(frameWidth, frameHeight);
+
+		numOfSeams = Math.abs(frameOutWidth - frameWidth);
+		this.imageMask = this.maskToFrame(imageMask);
+		this.keepMask = this.maskToFrame(keepMask);
+		if (frameWidth < 2 | frameHeight < 2)
 			throw new RuntimeException("Can not apply seam carving: workingImage is too small");
 
-		if (numOfSeams > inWidth / 2)
+		// An enlargement by more seams is done in stages.
+		if (frameOutWidth < frameWidth && numOfSeams > maxSeamsOfPass())
 			throw new RuntimeException("Can not apply seam carving: too many seams...");
 
 		// Setting resizeOp by with the appropriate method reference
-		if (outWidth > inWidth)
+		if (frameOutWidth > frameWidth)
 			resizeOp = this::increaseImageWidth;
-		else if (outWidth < inWidth)
+		else if (frameOutWidth < frameWidth)
 			resizeOp = this::reduceImageWidth;
 		else
 			resizeOp = this::duplicateWorkingImage;
 
 		k = 0; // init number of seams
+		metrics = new CarvingMetrics();
+		workspace = new CarvingWorkspace();
+		energy = EnergyFunction.GRADIENT;
+		carvedEnergy = energy;
+		progress = Progress.NONE;
+		incrementalUpdate = true;
+		batchSize = 1;
+		batchTolerance = 0;
+		pyramidScale = 1;
+		pyramidMargin = 0;
+		searchTo = -1;
 
 		this.logger.log("preliminary calculations were ended.");
 	}
 
 	public BufferedImage resize() {
-		return resizeOp.resize();
+		BufferedImage result = resizeOp.resize();
+		logger.log("Metrics: " + metrics);
+		return result;
+	}
+
+	/**
+	 * Sets the progress which receives the number of seams found out of all the seams,
+	 * and which may cancel the carving between seams.
+	 */
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Sets the function the energies of the pixels are calculated with
+	 * (EnergyFunction.GRADIENT by default). The input of the function, if any, is
+	 * carved along with the image.
+	 */
+	public void setEnergyFunction(EnergyFunction energy) {
+		int[][] input = energy.input();
+		if (input != null && (input.length != inHeight || input[0].length != inWidth))
+			throw new IllegalArgumentException("Energy input must be of the image size");
+
+		this.energy = energy;
+		carvedEnergy = energy;
+	}
+
+	/**
+	 * Returns the energy function of the carved image, with its carved input.
+	 */
+	public EnergyFunction getEnergyFunctionAfterSeamCarving() {
+		return carvedEnergy;
+	}
+
+	/**
+	 * Sets the workspace the working buffers are taken from, instead of a workspace
+	 * of this carver alone. Must be set before the carving starts.
+	 */
+	public void setWorkspace(CarvingWorkspace workspace) {
+		this.workspace = workspace;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Returns the timing and counters of the carving so far.
+	 */
+	public CarvingMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Sets whether the cost matrix is updated incrementally after each seam
+	 * (only around the removed seam), or rebuilt from scratch.
+	 * Both modes result in the same seams.
+	 */
+	public void setIncrementalUpdate(boolean incrementalUpdate) {
+		this.incrementalUpdate = incrementalUpdate;
+	}
+
+	/**
+	 * Sets the batch mode, in which several non-crossing seams are taken
+	 * from each cost matrix before it is recalculated.
+	 * The seams of a batch are cheaper to find, yet they are not necessarily
+	 * the ones the exact mode would find.
+	 * @param batchSize - maximal number of seams in a batch (1 means the exact mode).
+	 * @param tolerance - a seam joins a batch only if its cost exceeds the cost of the
+	 *                    cheapest seam in the batch by at most this fraction of it.
+	 */
+	public void setBatchMode(int batchSize, double tolerance) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		if (tolerance < 0)
+			throw new IllegalArgumentException("Batch tolerance can not be negative");
+
+		this.batchSize = batchSize;
+		this.batchTolerance = tolerance;
+	}
+
+	/**
+	 * Sets the multi-resolution search, in which each seam is first found on
+	 * an image downsampled by the given scale, and is then refined at full
+	 * resolution only within a corridor around the coarse seam.
+	 * A coarse seam is good for up to scale seams, as removing one coarse column
+	 * stands for removing scale columns of the image.
+	 * The refined seams are not necessarily the ones the exact search would find.
+	 * This mode takes precedence over the batch mode.
+	 * @param scale - downsampling factor (1 means the exact search).
+	 * @param margin - number of columns the corridor is widened by on each side.
+	 */
+	public void setPyramidSearch(int scale, int margin) {
+		if (scale < 1)
+			throw new IllegalArgumentException("Pyramid scale must be positive");
+		if (margin < 1)
+			throw new IllegalArgumentException("Pyramid margin must be positive");
+
+		this.pyramidScale = scale;
+		this.pyramidMargin = margin;
+	}
+
+	/**
+	 * Restricts the search of the seams to a range of the image, such as the
+	 * columns around an object that is removed.
+	 * The range is a corridor which shrinks as the seams inside it are removed,
+	 * and the search falls back to the whole image once it is used up, or if no
+	 * seam fits in it.
+	 * The multi-resolution search takes precedence over this restriction.
+	 * @param from - first column (or row, for horizontal seams) of the range.
+	 * @param to - last column (or row, for horizontal seams) of the range.
+	 */
+	public void setSearchRange(int from, int to) {
+		if (from < 0 || to >= frameWidth || from > to)
+			throw new IllegalArgumentException("Search range must be within the image");
+
+		// The frame columns of horizontal seams go up the image rows.
+		boolean vertical = direction == Direction.VERTICAL;
+		searchFrom = vertical ? from : frameWidth - 1 - to;
+		searchTo = vertical ? to : frameWidth - 1 - from;
 	}
 
 	private BufferedImage reduceImageWidth() {
 		logger.log("Starting to reduce image...");
-		BufferedImage tempImg = newEmptyInputSizedImage();
-		BufferedImage result = newEmptyOutputSizedImage();
-
-		// Copy working image
-		opReduce = true;
-		forEach((y, x) -> tempImg.setRGB(x, y, workingImage.getRGB(x, y)));
-		this.tempImg = tempImg;
+		this.startReduce();
 
 		// Find all seams.
 		// During the process of finding new seams, we reduce the previous
 		// ones and therefore resizing the image accordingly.
 		this.findSeams();
 
-		// Trim temp image to desired output size.
-		setForEachOutputParameters();
-		forEach((y, x) -> result.setRGB(x, y, tempImg.getRGB(x, y)));
+		BufferedImage result = this.reducedImage();
 		logger.log("Done reducing image.");
 		return result;
 	}
 
+	/**
+	 * Reduces the image by up to a given number of seams more, and returns the reduced image.
+	 * The carver keeps its matrices between the steps, so each step goes on
+	 * incrementally from the previous one, and the steps find the same seams as
+	 * a single resize (except in batch mode, where a step ends its last batch early).
+	 * The masks and the energy function after seam carving are the ones of the last step.
+	 */
+	public BufferedImage reduceBy(int seams) {
+		if (frameOutWidth >= frameWidth)
+			throw new IllegalStateException("Only a reducing carver reduces by steps");
+
+		if (k == 0)
+			this.startReduce();
+		this.findSeams(null, k - 1 + Math.min(seams, this.getSeamsLeft()));
+		return this.reducedImage();
+	}
+
+	/**
+	 * Returns the number of seams which are not carved yet.
+	 */
+	public int getSeamsLeft() {
+		return k == 0 ? numOfSeams : numOfSeams - (k - 1);
+	}
+
+	// Copies the working image, which the seams are removed from.
+	private void startReduce() {
+		opReduce = true;
+		long start = metrics.start();
+		this.tempImg = this.pixelsToFrame(workingPixels());
+		metrics.stop(CarvingMetrics.Phase.COPY, start);
+		this.startSeams();
+	}
+
+	// Returns the image without the seams removed so far.
+	private BufferedImage reducedImage() {
+		carvedWidth = frameWidth - (k - 1);
+		long start = metrics.start();
+		BufferedImage result = this.imageFromFrame(tempImg, carvedWidth);
+		if (energy.input() != null)
+			carvedEnergy = energy.withInput(this.valuesFromFrame(energyValues, carvedWidth));
+		metrics.stop(CarvingMetrics.Phase.COPY, start);
+		return result;
+	}
+
 
 	private BufferedImage increaseImageWidth() {
-		logger.log("Starting to increase image...");
-		BufferedImage result = newEmptyOutputSizedImage();
-		boolean[][] tempMask = new boolean[outHeight][outWidth];
+		if (numOfSeams > maxSeamsOfPass())
+			return this.increaseImageWidthInStages();
 
-		// Find all seams.
-		this.findSeams();
+		logger.log("Starting to increase image...");
+		PixelBuffer src = workingPixels();
 
-		// Iterate all pixels in the desired output image.
-		// Upon encountering a seam, indent the x's coordinate
-		// from which to get the RGB value.
-		for (int y = 0; y < outHeight; y++) {
-			int indent = 0;
-			for (int x = 0; x < outWidth; x++) {
-				result.setRGB(x, y, workingImage.getRGB(x - indent, y));
-				tempMask[y][x] = imageMask[y][x - indent];
+		// The masks are shifted while the seams are found.
+		long start = metrics.start();
+		SparseMask srcMask = imageMask.duplicate();
+		SparseMask srcKeepMask = keepMask.duplicate();
+		metrics.stop(CarvingMetrics.Phase.COPY, start);
 
-				if (isPartOfSeam(x, y)) indent++;
+		// Find all seams, and mark their original pixels.
+		int[][] seams = this.findSeams();
+		start = metrics.start();
+		boolean[] seamPixels = new boolean[frameHeight * frameWidth];
+		metrics.countAllocation((long) frameWidth * frameHeight);
+		for (int[] seam : seams)
+			for (int y = 0; y < frameHeight; y++)
+				seamPixels[y * frameWidth + seam[y]] = true;
+		metrics.stop(CarvingMetrics.Phase.SEAM_INDEXES, start);
+
+		start = metrics.start();
+		PixelBuffer result = new PixelBuffer(frameOutWidth, frameHeight);
+		SparseMask tempMask = new SparseMask(frameHeight);
+		SparseMask tempKeepMask = new SparseMask(frameHeight);
+		metrics.countAllocation(4L * frameOutWidth * frameHeight);
+		int[][] input = energy.input();
+		int[][] tempValues = input == null ? null : new int[frameHeight][frameOutWidth];
+
+		// Iterate all pixels in the input image, and duplicate
+		// the ones of the seams.
+		for (int y = 0; y < frameHeight; y++) {
+			int x = 0;
+			for (int from = 0; from < frameWidth; from++) {
+				int rgb = this.framePixel(src, from, y);
+				boolean masked = srcMask.get(from, y);
+				boolean kept = srcKeepMask.get(from, y);
+				result.set(x, y, rgb);
+				if (masked) tempMask.set(x, y);
+				if (kept) tempKeepMask.set(x, y);
+				if (input != null) tempValues[y][x] = this.frameValue(input, from, y);
+				x++;
+
+				if (seamPixels[y * frameWidth + from]) {
+					result.set(x, y, rgb);
+					if (masked) tempMask.set(x, y);
+					if (kept) tempKeepMask.set(x, y);
+					if (input != null) tempValues[y][x] = tempValues[y][x - 1];
+					x++;
+				}
 			}
 		}
 
 		imageMask = tempMask;
+		keepMask = tempKeepMask;
+		if (input != null)
+			carvedEnergy = energy.withInput(this.valuesFromFrame(tempValues, frameOutWidth));
+		BufferedImage img = this.imageFromFrame(result, frameOutWidth);
+		metrics.stop(CarvingMetrics.Phase.COPY, start);
 		logger.log("Done increase image.");
-		return result;
+		return img;
 	}
 
 	/**
-	 * Returns true of a given x coordinate is a part of a seam.
+	 * Enlarges the image by more seams than a single pass can insert.
+	 * Each stage inserts up to half of the width the previous stage enlarged
+	 * the image to, as more seams of a single pass would mostly duplicate
+	 * the same low energy area.
+	 * The stages share the workspace of this carver, which is allocated once by the widest stage.
 	 */
-	private boolean isPartOfSeam(int x, int row) {
-		for (int[] seam : increasedSeams) if (seam[row] == x) return true;
-		return false;
+	private BufferedImage increaseImageWidthInStages() {
+		// The input width of each stage, followed by the output width.
+		List<Integer> widths = new ArrayList<>();
+		for (int width = frameWidth; width < frameOutWidth; width = Math.min(frameOutWidth, width + width / 2))
+			widths.add(width);
+		widths.add(frameOutWidth);
+		int stages = widths.size() - 1;
+		logger.log("Starting to increase image in " + stages + " stages...");
+
+		long start = metrics.start();
+		int widest = widths.get(stages - 1);
+		workspace.greyscale(widest, frameHeight, metrics);
+		workspace.energies(widest * frameHeight, metrics);
+		workspace.costMatrix(widest * frameHeight, metrics);
+		workspace.parents(widest * frameHeight, metrics);
+		workspace.originalColumns(widest * frameHeight, metrics);
+		metrics.stop(CarvingMetrics.Phase.ENERGY, start);
+
+		BufferedImage img = workingImage;
+		boolean[][] mask = this.maskFromFrame(imageMask, frameWidth);
+		boolean[][] keep = keepMask.isEmpty() ? null : this.maskFromFrame(keepMask, frameWidth);
+		EnergyFunction stageEnergy = energy;
+		for (int i = 0; i < stages; i++) {
+			logger.log("Stage " + (i + 1) + " of " + stages + ": increasing [" + widths.get(i) + "] to ["
+					+ widths.get(i + 1) + "]...");
+			SeamsCarver stage = new SeamsCarver(carverLogger, img, widths.get(i + 1), rgbWeights, mask, keep,
+					direction);
+			stage.setForEachPool(getForEachPool());
+			stage.setEnergyFunction(stageEnergy);
+			stage.incrementalUpdate = incrementalUpdate;
+			stage.batchSize = batchSize;
+			stage.batchTolerance = batchTolerance;
+			stage.pyramidScale = pyramidScale;
+			stage.pyramidMargin = pyramidMargin;
+			stage.setWorkspace(workspace);
+			stage.setProgress(Progress.part(progress, widths.get(i) - frameWidth, numOfSeams));
+
+			img = stage.resize();
+			mask = stage.getMaskAfterSeamCarving();
+			keep = keep == null ? null : stage.getKeepMaskAfterSeamCarving();
+			imageMask = stage.imageMask;
+			keepMask = stage.keepMask;
+			stageEnergy = stage.getEnergyFunctionAfterSeamCarving();
+			metrics.add(stage.getMetrics());
+		}
+		carvedEnergy = stageEnergy;
+
+		logger.log("Done increase image.");
+		return img;
+	}
+
+	/**
+	 * Returns the maximal number of seams a single pass inserts or removes.
+	 */
+	private int maxSeamsOfPass() {
+		return frameWidth / 2;
 	}
 
 	public BufferedImage showSeams(int seamColorRGB) {
-		BufferedImage result = newEmptyInputSizedImage();
-		forEach((y, x) -> result.setRGB(x, y, workingImage.getRGB(x, y)));
+		if (numOfSeams > maxSeamsOfPass())
+			throw new RuntimeException("Can not show seams: too many seams...");
 
 		// Locate the relevant seams pixels and color the image accordingly.
 		int[][] seams = this.findSeams();
-		for (int y = 0; y < seams[0].length; y++) {
+		long start = metrics.start();
+		PixelBuffer result = workingPixels().duplicate();
+		metrics.countAllocation(4L * inWidth * inHeight);
+		for (int y = 0; y < frameHeight; y++) {
 			for (int[] s : seams) {
-				result.setRGB(s[y] ,y, seamColorRGB);
+				if (direction == Direction.VERTICAL) result.set(s[y] ,y, seamColorRGB);
+				else result.set(y, frameWidth - 1 - s[y], seamColorRGB);
 			}
 		}
 
-		return result;
+		BufferedImage img = newImage(result);
+		metrics.stop(CarvingMetrics.Phase.COPY, start);
+		logger.log("Metrics: " + metrics);
+		return img;
 	}
 
 	public boolean[][] getMaskAfterSeamCarving() {
-		boolean[][] mask = new boolean[outHeight][outWidth];
 		// The image mask values are already updated.
 		// Just trim it to the correct matrix size.
-		setForEachOutputParameters();
-		forEach((y, x) -> mask[y][x] = imageMask[y][x]);
+		return this.maskFromFrame(imageMask, carvedWidth);
+	}
+
+	/**
+	 * Returns the protected pixels of the carved image.
+	 */
+	public boolean[][] getKeepMaskAfterSeamCarving() {
+		return this.maskFromFrame(keepMask, carvedWidth);
+	}
+
+	/**
+	 * Returns the image mask of a given frame layout mask, trimmed to a given frame width.
+	 * Only the runs of masked pixels are visited.
+	 */
+	private boolean[][] maskFromFrame(SparseMask frameMask, int width) {
+		if (direction == Direction.VERTICAL)
+			return frameMask.toDense(width);
+
+		boolean[][] mask = new boolean[width][frameHeight];
+		for (int y = 0; y < frameHeight; y++) {
+			for (int run = 0; run < frameMask.runs(y); run++) {
+				int to = Math.min(width - 1, frameMask.runTo(y, run));
+				for (int x = frameMask.runFrom(y, run); x <= to; x++)
+					mask[width - 1 - x][y] = true;
+			}
+		}
 		return mask;
 	}
 
 	/**
-	 * Sets the pixels in greyscale values.
+	 * Returns the values of a given frame layout, trimmed to a given frame width, in image layout.
+	 */
+	private int[][] valuesFromFrame(int[][] frameValues, int width) {
+		if (direction == Direction.VERTICAL) {
+			int[][] values = new int[frameHeight][];
+			for (int y = 0; y < frameHeight; y++)
+				values[y] = Arrays.copyOf(frameValues[y], width);
+			return values;
+		}
+
+		int[][] values = new int[width][frameHeight];
+		for (int y = 0; y < width; y++)
+			for (int x = 0; x < frameHeight; x++)
+				values[y][x] = frameValues[x][width - 1 - y];
+		return values;
+	}
+
+	/**
+	 * Returns a copy of given image layout values in frame layout.
+	 */
+	private int[][] valuesToFrame(int[][] values) {
+		int[][] frameValues = new int[frameHeight][frameWidth];
+		for (int y = 0; y < frameHeight; y++)
+			for (int x = 0; x < frameWidth; x++)
+				frameValues[y][x] = this.frameValue(values, x, y);
+		return frameValues;
+	}
+
+	/**
+	 * Returns the value of image layout values at the given frame coordinates.
+	 */
+	private int frameValue(int[][] values, int x, int y) {
+		return (direction == Direction.VERTICAL) ? values[y][x] : values[frameWidth - 1 - x][y];
+	}
+
+	/**
+	 * Returns the pixel of the image at the given frame coordinates.
+	 */
+	private int framePixel(PixelBuffer src, int x, int y) {
+		return (direction == Direction.VERTICAL) ? src.get(x, y) : src.get(y, frameWidth - 1 - x);
+	}
+
+	/**
+	 * Returns the pixels of the image in frame layout.
+	 * For vertical seams this is just a copy.
+	 */
+	private PixelBuffer pixelsToFrame(PixelBuffer src) {
+		PixelBuffer frame = new PixelBuffer(frameWidth, frameHeight,
+				workspace.pixels(frameWidth * frameHeight, metrics));
+		if (direction == Direction.VERTICAL) {
+			System.arraycopy(src.pixels, 0, frame.pixels, 0, frameWidth * frameHeight);
+			return frame;
+		}
+
+		for (int y = 0; y < frameHeight; y++)
+			for (int x = 0; x < frameWidth; x++)
+				frame.set(x, y, src.get(y, frameWidth - 1 - x));
+		return frame;
+	}
+
+	/**
+	 * Creates the image of the given frame width from frame layout pixels.
+	 * For vertical seams this is just the left part of the frame.
+	 */
+	private BufferedImage imageFromFrame(PixelBuffer frame, int width) {
+		if (direction == Direction.VERTICAL)
+			return newImage(frame, width, frameHeight);
+
+		PixelBuffer pixels = new PixelBuffer(frameHeight, width);
+		for (int y = 0; y < pixels.height; y++)
+			for (int x = 0; x < pixels.width; x++)
+				pixels.set(x, y, frame.get(width - 1 - y, x));
+		return newImage(pixels);
+	}
+
+	/**
+	 * Returns a given image mask in frame layout (an empty one for null).
 	 */
-	private void setGreyscale() {
-		logger.log("Converting to greyscale...");
-		int[][] result = new int[inHeight][inWidth];
+	private SparseMask maskToFrame(boolean[][] mask) {
+		if (direction == Direction.VERTICAL)
+			return SparseMask.of(mask, frameHeight);
+
+		SparseMask frameMask = new SparseMask(frameHeight);
+		if (mask == null)
+			return frameMask;
+
+		for (int y = 0; y < frameHeight; y++)
+			for (int x = 0; x < frameWidth; x++)
+				if (mask[frameWidth - 1 - x][y]) frameMask.set(x, y);
+		return frameMask;
+	}
 
-		forEach((y, x) -> {
-			Color c =  new Color(workingImage.getRGB(x, y));
-			int greyVal = (c.getRed() + c.getGreen() + c.getBlue()) / 3;
-			Color greyCol = new Color(greyVal, greyVal, greyVal);
-			result[y][x] = greyCol.getRGB();
+	/**
+	 * Sets the pixels in greyscale values.
+	 */
+	void setGreyscale() {
+		logger.log(Level.DEBUG, "Converting to greyscale...");
+		int[][] result = workspace.greyscale(frameWidth, frameHeight, metrics);
+		PixelBuffer src = workingPixels();
+
+		parallelForEach((y, x) -> {
+			int c = this.framePixel(src, x, y);
+			int greyVal = (PixelBuffer.red(c) + PixelBuffer.green(c) + PixelBuffer.blue(c)) / 3;
+			result[y][x] = PixelBuffer.rgb(greyVal, greyVal, greyVal);
 		});
 
 		this.greyscale = result;
-		logger.log("Done converting to greyscale.");
+
+		// The input of the energy function is carved along with the greyscale values.
+		if (energy.input() == null) {
+			energyValues = result;
+		} else {
+			energyValues = this.valuesToFrame(energy.input());
+			metrics.countAllocation(4L * frameWidth * frameHeight);
+		}
+		logger.log(Level.DEBUG, "Done converting to greyscale.");
+	}
+
+	/**
+	 * Takes the energies, cost matrix and parents arrays from the workspace.
+	 * They are taken once by the input dimensions and reused for all the seams,
+	 * while each row only uses its first (frameWidth - k) entries.
+	 */
+	void allocateCostMatrix() {
+		stride = frameWidth;
+		energies = workspace.energies(frameHeight * stride, metrics);
+		costMatrix = workspace.costMatrix(frameHeight * stride, metrics);
+		parents = workspace.parents(frameHeight * stride, metrics);
 	}
 
 	/**
 	 * Calculate the gradient magnitude initialization matrix
 	 * by calculating the energy of each pixel.
 	 */
-	private void initCostMatrix(int height, int width) {
-		logger.log("Initiating cost matrix...");
-		EnergyPixel[][] E = new EnergyPixel[height][width];
-		forEach((y, x) -> E[y][x] = new EnergyPixel(this.calcEnergy(y, x)));
+	void initCostMatrix() {
+		logger.log(Level.DEBUG, "Initiating cost matrix...");
+		parallelForEachRow((y, width) -> {
+			int row = y * stride;
+			this.calcEnergies(y, 0, width);
+			System.arraycopy(energies, row, costMatrix, row, width);
+		});
 
-		logger.log("Done initiating cost matrix by pixel energies.");
-		this.costMatrix = E;
+		logger.log(Level.DEBUG, "Done initiating cost matrix by pixel energies.");
 	}
 
 	/**
 	 * Calculates the Dynamic Programming recursive formula
 	 * for the cost matrix.
+	 * Each row only depends on the previous one, so the columns of a row
+	 * are calculated in parallel chunks, and a row starts only once the
+	 * previous one is done.
 	 */
-	private void calcForwardCostMatrix() {
-		logger.log("Calculating forward looking cost matrix...");
-		forEach(this::calcCoordinateCost);
-		logger.log("Done calculating cost matrix.");
+	void calcForwardCostMatrix() {
+		logger.log(Level.DEBUG, "Calculating forward looking cost matrix...");
+		forEachRow((y, width) -> parallelForRange(0, width, MIN_COLUMNS_CHUNK, (from, to) -> {
+			for (int x = from; x < to; x++) {
+				this.calcCoordinateCost(y, x);
+			}
+		}));
+		logger.log(Level.DEBUG, "Done calculating cost matrix.");
 	}
 
 	/**
 	 * Updates the cost matrix by recalculating the energies
 	 * and forward cost.
+	 * @param batch - the seams that were just removed.
 	 */
-	private void updateForwardCostMatrix() {
-		setForEachWidth(inWidth - k);
-		this.initCostMatrix(inHeight, inWidth - k);
-		this.calcForwardCostMatrix();
+	private void updateForwardCostMatrix(int[][] batch) {
+		setForEachWidth(frameWidth - k);
+		long cells = (long) (frameWidth - k) * frameHeight;
+		if (corridorFrom != null) {
+			// Only the energies are kept up to date, the cost is
+			// calculated within the search corridor.
+			long start = metrics.start();
+			if (incrementalUpdate) this.updateEnergies(batch);
+			else this.initCostMatrix();
+			metrics.stop(CarvingMetrics.Phase.ENERGY, start);
+
+			start = metrics.start();
+			this.shrinkCorridor(batch[0]);
+			this.calcPyramidCostMatrix();
+			metrics.stop(CarvingMetrics.Phase.COST_MATRIX, start);
+			metrics.countCostMatrix(this.corridorCells());
+			return;
+		}
+
+		if (!incrementalUpdate) {
+			long start = metrics.start();
+			this.initCostMatrix();
+			metrics.stop(CarvingMetrics.Phase.ENERGY, start);
+
+			start = metrics.start();
+			this.calcForwardCostMatrix();
+			metrics.stop(CarvingMetrics.Phase.COST_MATRIX, start);
+			metrics.countCostMatrix(cells);
+			return;
+		}
+
+		long start = metrics.start();
+		this.updateEnergies(batch);
+		metrics.stop(CarvingMetrics.Phase.ENERGY, start);
+
+		start = metrics.start();
+		cells = this.updateCostMatrix(batch);
+		metrics.stop(CarvingMetrics.Phase.COST_MATRIX, start);
+		metrics.countIncrementalUpdate(cells);
+	}
+
+	/**
+	 * Recalculates the energies of the pixels which their neighbors
+	 * were changed by the removal of the given seams.
+	 * All the other energies were already shifted along with the greyscale values.
+	 */
+	private void updateEnergies(int[][] batch) {
+		int width = frameWidth - k;
+		int radius = energy.radius();
+		int[] bands = new int[2 * batch.length];
+		for (int y = 0; y < frameHeight; y++) {
+			int length = this.seamBands(batch, y, radius, width, bands);
+			int to = -1;
+			for (int i = 0; i < length; i += 2) {
+				this.calcEnergies(y, bands[i], bands[i + 1] + 1);
+				to = bands[i + 1];
+			}
+
+			// The last columns take the pixels left to them as neighbors.
+			this.calcEnergies(y, Math.max(to + 1, width - radius), width);
+		}
+	}
+
+	/**
+	 * Recalculates the forward cost only within the cones below the removed
+	 * seams: the bands around the seams in each row (as wide as the energies were
+	 * recalculated), widened by the columns of the previous row which their cost
+	 * was actually changed.
+	 * @return the number of entries that were calculated.
+	 */
+	private long updateCostMatrix(int[][] batch) {
+		int width = frameWidth - k;
+		int radius = Math.max(1, energy.radius()); // The forward cost takes the adjacent pixels.
+		int[] bands = new int[2 * batch.length];
+		// The ranges of the columns which their cost was changed, in the previous
+		// row and in the current one (pairs of first and last columns).
+		int[] changed = new int[width + 2];
+		int changedLength = 0;
+		int[] rowChanged = new int[width + 2];
+		long cells = 0;
+
+		for (int y = 0; y < frameHeight; y++) {
+			int bandsLength = this.seamBands(batch, y, radius, width, bands);
+			int rowChangedLength = 0;
+			int lastTo = -1; // Last column calculated so far in this row.
+
+			// Visit the bands and the widened changed ranges from left to right.
+			int b = 0;
+			int c = 0;
+			while (b < bandsLength || c < changedLength) {
+				int from, to;
+				if (c == changedLength || (b < bandsLength && bands[b] <= changed[c] - 1)) {
+					from = bands[b];
+					to = bands[b + 1];
+					b += 2;
+				} else {
+					from = Math.max(0, changed[c] - 1);
+					to = Math.min(width - 1, changed[c + 1] + 1);
+					c += 2;
+				}
+
+				from = Math.max(from, lastTo + 1);
+				cells += Math.max(0, to - from + 1);
+				for (int x = from; x <= to; x++) {
+					if (this.calcCoordinateCost(y, x))
+						rowChangedLength = addColumn(rowChanged, rowChangedLength, x);
+				}
+				lastTo = Math.max(lastTo, to);
+			}
+
+			// The energies of the last columns were recalculated as well.
+			for (int x = Math.max(lastTo + 1, width - radius); x < width; x++) {
+				if (this.calcCoordinateCost(y, x))
+					rowChangedLength = addColumn(rowChanged, rowChangedLength, x);
+			}
+
+			int[] previous = changed;
+			changed = rowChanged;
+			changedLength = rowChangedLength;
+			rowChanged = previous;
+		}
+
+		return cells;
+	}
+
+	/**
+	 * Adds a column to the ranges of changed columns, which are visited from left to right.
+	 * @return the new length of the ranges.
+	 */
+	private static int addColumn(int[] ranges, int length, int x) {
+		if (length > 0 && ranges[length - 1] == x - 1) {
+			ranges[length - 1] = x;
+			return length;
+		}
+
+		ranges[length] = x;
+		ranges[length + 1] = x;
+		return length + 2;
+	}
+
+	/**
+	 * Sets the merged ranges of a given row that might be affected by the removal
+	 * of a batch of seams, ordered from left to right, and returns their length.
+	 * The seams of a batch are removed from right to left, so the columns of a seam
+	 * are relative to the image before the seams left to it were removed. Its band is
+	 * widened to the left by their number, as they shift the band by up to it.
+	 * @param batch - the removed seams, ordered from right to left.
+	 * @param bands - receives the pairs of first and last columns of the ranges.
+	 */
+	private int seamBands(int[][] batch, int y, int radius, int width, int[] bands) {
+		int length = 0;
+		for (int i = batch.length - 1; i >= 0; i--) {
+			int shift = batch.length - 1 - i;
+			int from = Math.max(0, this.seamBandStart(batch[i], y, radius) - shift);
+			int to = Math.min(width - 1, this.seamBandEnd(batch[i], y, radius));
+			if (from > to)
+				continue;
+
+			if (length > 0 && from <= bands[length - 1] + 1) {
+				bands[length - 1] = Math.max(bands[length - 1], to);
+			} else {
+				bands[length] = from;
+				bands[length + 1] = to;
+				length += 2;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Returns the first column of the area in a given row that might be affected
+	 * by the removed seam: the seam columns within a given radius of rows, widened
+	 * by the radius.
+	 */
+	private int seamBandStart(int[] seam, int y, int radius) {
+		int min = seam[y];
+		for (int i = Math.max(0, y - radius); i <= Math.min(frameHeight - 1, y + radius); i++)
+			min = Math.min(min, seam[i]);
+		return min - radius;
+	}
+
+	/**
+	 * Returns the last column of the area in a given row that might be affected
+	 * by the removed seam: the seam columns within a given radius of rows, widened
+	 * by the radius.
+	 */
+	private int seamBandEnd(int[] seam, int y, int radius) {
+		int max = seam[y];
+		for (int i = Math.max(0, y - radius); i <= Math.min(frameHeight - 1, y + radius); i++)
+			max = Math.max(max, seam[i]);
+		return max + radius;
 	}
 
 	/**
@@ -210,46 +882,82 @@ public class SeamsCarver extends ImageProcessor {
 	 * - Image mask
 	 * - Greyscale values
 	 * - On reduce operation, shifts the pixels left on the temporary image.
-	 * On top of that, it calls for calculation of the next cost matrix.
+	 * On top of that, once the last seam of a batch is removed, it calls
+	 * for calculation of the next cost matrix.
 	 * @param seam - given seam.
+	 * @param batch - the batch the seam belongs to.
 	 */
-	private void updateMatrices(int[] seam) {
-		logger.log("Updating matrices...");
+	private void updateMatrices(int[] seam, int[][] batch) {
+		logger.log(Level.DEBUG, "Updating matrices...");
 
-		for (int y = 0; y < costMatrix.length; y++) {
+		long start = metrics.start();
+		for (int y = 0; y < frameHeight; y++) {
 			// Shift left all pixels that are right to the seam
-			for (int x = seam[y]; x < inWidth - k; x++) {
-				imageMask[y][x] = imageMask[y][x + 1];
-				greyscale[y][x] = greyscale[y][x + 1];
+			int from = seam[y];
+			int length = frameWidth - k - from;
+			int i = y * stride + from;
+			imageMask.removeColumn(from, y);
+			keepMask.removeColumn(from, y);
+			System.arraycopy(greyscale[y], from + 1, greyscale[y], from, length);
+			if (energyValues != greyscale)
+				System.arraycopy(energyValues[y], from + 1, energyValues[y], from, length);
+			System.arraycopy(energies, i + 1, energies, i, length);
+			System.arraycopy(costMatrix, i + 1, costMatrix, i, length);
+			System.arraycopy(parents, i + 1, parents, i, length);
 
-				if (opReduce) {
-					// Relevant only for when reducing the image.
-					tempImg.setRGB(x, y, tempImg.getRGB(x + 1, y));
-				}
+			if (!opReduce) {
+				System.arraycopy(originalColumns, i + 1, originalColumns, i, length);
+			} else {
+				// Relevant only for when reducing the image.
+				int p = tempImg.rowOffset(y) + from;
+				System.arraycopy(tempImg.pixels, p + 1, tempImg.pixels, p, length);
 			}
 		}
+		metrics.stop(CarvingMetrics.Phase.SHIFT, start);
 
-		this.updateForwardCostMatrix();
-		logger.log("Done updating matrices for seam #" + k);
+		// There is no need for a cost matrix after the last seam.
+		if (k < numOfSeams && seam == batch[batch.length - 1]) {
+			this.updateForwardCostMatrix(batch);
+		}
+		if (logger.isLoggable(Level.DEBUG))
+			logger.log(Level.DEBUG, "Done updating matrices for seam #" + k);
 	}
 
 	/**
-	 * Calculates the energy of a pixel using gradient magnitude.
-	 * @param y - y coordinate
-	 * @param x - x coordinate
-	 * @return (long) the resulted energy.
+	 * Calculates the energies of a range of columns of a row with the energy function,
+	 * and then sets the ones of the protected and the masked pixels.
+	 * @param from - first column of the range.
+	 * @param to - the column after the range.
 	 */
-	private long calcEnergy(int y, int x) {
-		int neighborX = (x < inWidth - 1 - k) ? x + 1 : x - 1;
-		int neighborY = (y < inHeight - 1) ? y + 1 : y - 1;
+	private void calcEnergies(int y, int from, int to) {
+		if (from >= to)
+			return;
+
+		int row = y * stride;
+		energy.rowEnergies(energyValues, frameWidth - k, frameHeight, y, from, to, energies, row);
+		this.fillMaskedEnergies(keepMask, y, from, to, this.keepEnergy());
+		this.fillMaskedEnergies(imageMask, y, from, to, Integer.MIN_VALUE);
+	}
 
-		if (imageMask[y][x]) {
-			return Integer.MIN_VALUE;
-		}
+	/**
+	 * Returns the energy of a protected pixel, which is more than the cost of any seam
+	 * of unprotected pixels: the largest energy and the forward cost of two edges, in every row.
+	 */
+	private long keepEnergy() {
+		return frameHeight * (energy.maxEnergy() + 2 * MAX_EDGE_COST) + 1;
+	}
 
-		int deltaX = greyscale[y][neighborX] - greyscale[y][x];
-		int deltaY = greyscale[neighborY][x] - greyscale[y][x];
-		return Math.abs(deltaX) + Math.abs(deltaY);
+	/**
+	 * Sets the energies of the pixels of a given mask within a range of columns of a row.
+	 */
+	private void fillMaskedEnergies(SparseMask mask, int y, int from, int to, long value) {
+		int row = y * stride;
+		for (int run = 0; run < mask.runs(y); run++) {
+			int runFrom = Math.max(from, mask.runFrom(y, run));
+			int runTo = Math.min(to - 1, mask.runTo(y, run));
+			if (runFrom <= runTo)
+				Arrays.fill(energies, row + runFrom, row + runTo + 1, value);
+		}
 	}
 
 	/**
@@ -258,44 +966,128 @@ public class SeamsCarver extends ImageProcessor {
 	 */
 	private int[][] findSeams() {
 		logger.log("Searching seams...");
-		// Seams indexes that correspond to the dynamic programming cost matrix.
-		shiftedSeams = new int[numOfSeams][inHeight];
+		// Seams indexes that represent their original indexes.
+		int [][] seams = new int[numOfSeams][];
+		if (k == 0)
+			this.startSeams();
+		this.findSeams(seams, numOfSeams);
+		logger.log("Done searching for new seams.");
+		return seams;
+	}
 
-		// Seams indexes that correspond to their indexes on increasing operation.
-		increasedSeams = new int[numOfSeams][inHeight];
+	/**
+	 * Calculates the matrices of the first seam.
+	 */
+	private void startSeams() {
+		// The cost matrix may already be calculated by findCheapestSeamCost.
+		if (!costMatrixReady) {
+			this.prepareCostMatrix();
+		}
+		costMatrixReady = false;
+
+		// In increase mode (and when showing the seams), the original column
+		// of each entry is shifted along with the matrices, so the original
+		// indexes of each new seam are looked up.
+		if (!opReduce) {
+			originalColumns = workspace.originalColumns(frameHeight * stride, metrics);
+			for (int y = 0; y < frameHeight; y++)
+				for (int x = 0; x < frameWidth; x++)
+					originalColumns[y * stride + x] = x;
+		}
 
-		// Seams indexes that represent their original indexes.
-		int [][] seams = new int[numOfSeams][inHeight];
+		k = 1;
+	}
 
-		this.setGreyscale();
-		this.initCostMatrix(inHeight, inWidth);
-		this.calcForwardCostMatrix();
+	/**
+	 * Finds and removes the seams until a given number of seams were handled.
+	 * @param seams - receives the original indexes of the seams (null when reducing).
+	 */
+	private void findSeams(int[][] seams, int until) {
+		while (k <= until) {
+			if (progress.isCancelled())
+				throw new CancellationException("Seam carving was cancelled.");
+
+			long start = metrics.start();
+			int[][] batch = (batchSize == 1 || corridorFrom != null) ? new int[][] { findSeam() }
+					: findSeamsBatch(Math.min(batchSize, until - k + 1));
+			metrics.stop(CarvingMetrics.Phase.BACKTRACK, start);
+			metrics.countSeams(batch.length);
+
+			// The seams of a batch are ordered from right to left,
+			// so removing a seam does not move the ones that follow it.
+			for (int[] seam : batch) {
+				if (!opReduce) {
+					// Relevant for increasing and showing the seams.
+					start = metrics.start();
+					seams[k - 1] = this.restoreSeamIdxs(seam);
+					metrics.stop(CarvingMetrics.Phase.SEAM_INDEXES, start);
+				}
 
-		// In increase mode, while calculating indexes for each new seam,
-		// we want to check how many seams are preceding to the new ones,
-		// by comparing the indexes values.
-		// Therefore, initiate the relative 'cost matrix seams' indexes to
-		// large values to avoid counting empty 'zero' index seams.
-		for (int[] shiftedSeam : shiftedSeams) {
-			for (int j = 0; j < shiftedSeam.length; j++) {
-				shiftedSeam[j] = Integer.MAX_VALUE;
+				this.updateMatrices(seam, batch);
+				++k;
 			}
-		}
 
-		for (k = 1; k <= numOfSeams; ++k) {
-			int[] seam = findSeam();
-			this.updateMatrices(seam);
+			progress.update(k - 1, numOfSeams);
+		}
+	}
 
-			if (!opReduce) {
-				// Relevant for increasing and showing the seams.
-				seams[k - 1] = this.restoreSeamIdxs(seam);
-				increasedSeams[k - 1] = this.calculateIncreasedSeamIdxs(seam);
+	/**
+	 * Calculates the cost matrix of the working image, from which the first seam is taken.
+	 */
+	private void prepareCostMatrix() {
+		long start = metrics.start();
+		this.setGreyscale();
+		metrics.stop(CarvingMetrics.Phase.GREYSCALE, start);
+
+		start = metrics.start();
+		this.allocateCostMatrix();
+		this.initCostMatrix();
+		metrics.stop(CarvingMetrics.Phase.ENERGY, start);
+
+		start = metrics.start();
+		if (pyramidScale > 1 || searchTo >= 0) {
+			corridorFrom = new int[frameHeight];
+			corridorTo = new int[frameHeight];
+			corridorSeams = 0;
+			if (pyramidScale == 1) {
+				// The corridor of the search range is never rebuilt.
+				Arrays.fill(corridorFrom, searchFrom);
+				Arrays.fill(corridorTo, searchTo);
+				corridorSeams = Integer.MAX_VALUE;
 			}
+			this.calcPyramidCostMatrix();
+			metrics.countCostMatrix(this.corridorCells());
+		} else {
+			this.calcForwardCostMatrix();
+			metrics.countCostMatrix((long) frameWidth * frameHeight);
+		}
+		metrics.stop(CarvingMetrics.Phase.COST_MATRIX, start);
+	}
 
-			shiftedSeams[k - 1] = seam;
+	/**
+	 * Returns the forward energy cost of the next seam resize (or reduceBy) would take,
+	 * without carving it.
+	 * The cost matrix is kept, so a following resize does not calculate it again.
+	 */
+	public long findCheapestSeamCost() {
+		if (k > numOfSeams)
+			throw new IllegalStateException("No seams are left to carve");
+
+		// Once the seams are carved by steps, the cost matrix is kept up to date.
+		if (k == 0 && !costMatrixReady) {
+			this.prepareCostMatrix();
+			costMatrixReady = true;
 		}
-		logger.log("Done searching for new seams.");
-		return seams;
+
+		int from = 0;
+		int width = frameWidth - Math.max(0, k - 1);
+		if (corridorFrom != null) {
+			from = corridorFrom[frameHeight - 1];
+			width = corridorTo[frameHeight - 1] - from + 1;
+		}
+
+		int lastRow = (frameHeight - 1) * stride;
+		return costMatrix[lastRow + from + this.findMinCostIdx(lastRow + from, width)];
 	}
 
 	/**
@@ -303,149 +1095,404 @@ public class SeamsCarver extends ImageProcessor {
 	 * the cost matrix, backtrace the path of the seam.
 	 * @return - returns the seam indexes.
 	 */
-	private int[] findSeam() {
-		logger.log("Finding optimal seam #" + k);
-		int[] seam = new int[inHeight];
+	int[] findSeam() {
+		if (logger.isLoggable(Level.DEBUG))
+			logger.log(Level.DEBUG, "Finding optimal seam #" + k);
+		int[] seam = new int[frameHeight];
 
 		// Get the index of the minimum cost value from the
-		// last row of the cost matrix.
-		int j = inHeight - 1;
-		int idx = this.findMinCostIdx(this.costMatrix[j]);
-
-		// Start from bottom and climb up using each
-		// pixel's parent value.
-		for (int i = seam.length - 1; i >= 0; i--) {
-			seam[i] = idx;
-			path p = costMatrix[j][idx].getParent();
-			if (p == path.L) { idx -= 1; }
-			else if (p == path.R) { idx += 1; }
-			j--;
+		// last row of the cost matrix (or of its search corridor).
+		int from = 0;
+		int width = frameWidth - k + 1;
+		if (corridorFrom != null) {
+			from = corridorFrom[frameHeight - 1];
+			width = corridorTo[frameHeight - 1] - from + 1;
 		}
 
+		int idx = from + this.findMinCostIdx((frameHeight - 1) * stride + from, width);
+		this.backtrackSeam(idx, seam);
 		return seam;
 	}
 
 	/**
-	 * Find the index of the minimum value for a given
-	 * array of pixels.
-	 * @param arr - given EnergyPixel array.
-	 * @return the resulted index.
+	 * Finds the optimal seam of the working image.
+	 * Used by the coarse level of the multi-resolution search.
 	 */
-	private int findMinCostIdx(EnergyPixel[] arr) {
-		int minIdx = 0;
-		long min = arr[0].getEnergy();
+	private int[] findOptimalSeam() {
+		this.setGreyscale();
+		this.allocateCostMatrix();
+		this.initCostMatrix();
+		this.calcForwardCostMatrix();
+		k = 1;
+		return this.findSeam();
+	}
 
-		for (int i = 1; i < arr.length; i++) {
-			if (arr[i].getEnergy() < min) {
-				min = arr[i].getEnergy();
-				minIdx = i;
+	/**
+	 * Calculates the cost matrix within the search corridor, after rebuilding
+	 * the corridor if it is used up (the corridor of a search range is then
+	 * widened to the whole image).
+	 * If no seam fits in the corridor, it falls back to the exact search.
+	 */
+	private void calcPyramidCostMatrix() {
+		boolean rebuilt = corridorSeams == 0;
+		if (rebuilt) {
+			if (pyramidScale > 1) this.buildCorridor();
+			else this.setFullCorridor(Integer.MAX_VALUE);
+		}
+
+		this.calcCorridorCostMatrix();
+		if (!rebuilt && pyramidScale > 1 && !this.corridorHasSeam()) {
+			this.buildCorridor();
+			this.calcCorridorCostMatrix();
+		}
+
+		if (!this.corridorHasSeam()) {
+			logger.log(Level.DEBUG, "No seam fits in the search corridor, searching the whole image...");
+			this.setFullCorridor(1);
+			this.calcForwardCostMatrix();
+		}
+	}
+
+	/**
+	 * Returns true if the cost matrix has a seam which is within the search corridor.
+	 */
+	private boolean corridorHasSeam() {
+		int lastRow = (frameHeight - 1) * stride;
+		int from = corridorFrom[frameHeight - 1];
+		int idx = from + this.findMinCostIdx(lastRow + from, corridorTo[frameHeight - 1] - from + 1);
+		return costMatrix[lastRow + idx] < UNREACHABLE / 2;
+	}
+
+	/**
+	 * Builds the search corridor around the optimal seam of a downsampled image.
+	 * Each block of scale x scale greyscale pixels is averaged into a single pixel
+	 * (which is masked if any of the block pixels is), and the seam is found by a
+	 * separate carver with the same energy function, whose input, if any, is averaged
+	 * the same way.
+	 * The corridor of each row covers the coarse seam columns of its block row
+	 * and of the adjacent block rows, so consecutive rows always overlap.
+	 */
+	private void buildCorridor() {
+		int width = frameWidth - k;
+		int scale = pyramidScale;
+		int coarseWidth = (width + scale - 1) / scale;
+		int coarseHeight = (frameHeight + scale - 1) / scale;
+		if (coarseWidth < 3 || coarseHeight < 2) {
+			// Too small to downsample.
+			this.setFullCorridor(scale);
+			return;
+		}
+
+		if (logger.isLoggable(Level.DEBUG))
+			logger.log(Level.DEBUG, "Building search corridor for seam #" + (k + 1) + "...");
+		PixelBuffer coarse = new PixelBuffer(coarseWidth, coarseHeight);
+		boolean[][] coarseMask = new boolean[coarseHeight][coarseWidth];
+		boolean[][] coarseKeepMask = keepMask.isEmpty() ? null : new boolean[coarseHeight][coarseWidth];
+		int[][] coarseInput = energyValues == greyscale ? null : new int[coarseHeight][coarseWidth];
+		for (int cy = 0; cy < coarseHeight; cy++) {
+			int toY = Math.min(frameHeight, (cy + 1) * scale);
+			for (int cx = 0; cx < coarseWidth; cx++) {
+				int toX = Math.min(width, (cx + 1) * scale);
+				int sum = 0;
+				long inputSum = 0;
+				boolean masked = false;
+				boolean kept = false;
+				for (int y = cy * scale; y < toY; y++) {
+					for (int x = cx * scale; x < toX; x++)
+						sum += greyscale[y][x] & 0xFF;
+					if (coarseInput != null)
+						for (int x = cx * scale; x < toX; x++)
+							inputSum += energyValues[y][x];
+					masked |= imageMask.intersects(y, cx * scale, toX - 1);
+					kept |= keepMask.intersects(y, cx * scale, toX - 1);
+				}
+
+				int pixels = (toY - cy * scale) * (toX - cx * scale);
+				int grey = sum / pixels;
+				coarse.set(cx, cy, PixelBuffer.rgb(grey, grey, grey));
+				if (coarseInput != null)
+					coarseInput[cy][cx] = (int) (inputSum / pixels);
+				coarseMask[cy][cx] = masked;
+				if (kept) coarseKeepMask[cy][cx] = true;
 			}
 		}
 
-		return minIdx;
+		SeamsCarver coarseCarver = new SeamsCarver(Logger.NONE, coarse.toImage(BufferedImage.TYPE_INT_RGB),
+				coarseWidth - 1, rgbWeights, coarseMask, coarseKeepMask, Direction.VERTICAL);
+		coarseCarver.setForEachPool(getForEachPool());
+		coarseCarver.setEnergyFunction(coarseInput == null ? energy : energy.withInput(coarseInput));
+		coarseCarver.setWorkspace(workspace.coarse());
+		int[] coarseSeam = coarseCarver.findOptimalSeam();
+
+		for (int y = 0; y < frameHeight; y++) {
+			int cy = y / scale;
+			int above = coarseSeam[Math.max(0, cy - 1)];
+			int below = coarseSeam[Math.min(coarseHeight - 1, cy + 1)];
+			int min = Math.min(coarseSeam[cy], Math.min(above, below));
+			int max = Math.max(coarseSeam[cy], Math.max(above, below));
+			corridorFrom[y] = Math.max(0, min * scale - pyramidMargin);
+			corridorTo[y] = Math.min(width - 1, (max + 1) * scale - 1 + pyramidMargin);
+		}
+
+		corridorSeams = scale;
 	}
 
 	/**
-	 * Calculates the actual seam indexes when increasing the image.
-	 * This is done by checking how much seams are preceding to
-	 * the given seam.
-	 * @param seam
-	 * @return
+	 * Returns the number of cost matrix entries within the search corridor.
+	 */
+	private long corridorCells() {
+		long cells = 0;
+		for (int y = 0; y < frameHeight; y++)
+			cells += corridorTo[y] - corridorFrom[y] + 1;
+		return cells;
+	}
+
+	/**
+	 * Sets the search corridor to the whole image.
+	 * @param seams - number of seams to find before the corridor is rebuilt.
+	 */
+	private void setFullCorridor(int seams) {
+		Arrays.fill(corridorFrom, 0);
+		Arrays.fill(corridorTo, frameWidth - k - 1);
+		corridorSeams = seams;
+	}
+
+	/**
+	 * Shrinks the search corridor after the removal of a given seam.
+	 * The corridor is rebuilt once it is used up or becomes empty in some row.
+	 */
+	private void shrinkCorridor(int[] seam) {
+		corridorSeams--;
+		for (int y = 0; y < frameHeight; y++) {
+			if (seam[y] < corridorFrom[y]) corridorFrom[y]--;
+			if (seam[y] <= corridorTo[y]) corridorTo[y]--;
+			if (corridorTo[y] < corridorFrom[y]) corridorSeams = 0;
+		}
+	}
+
+	/**
+	 * Calculates the cost matrix only within the search corridor.
+	 * The entries of the previous row which are adjacent to the corridor
+	 * but outside of its previous row part are set as unreachable.
+	 */
+	private void calcCorridorCostMatrix() {
+		int width = frameWidth - k;
+		for (int y = 0; y < frameHeight; y++) {
+			int from = corridorFrom[y];
+			int to = corridorTo[y];
+
+			if (y > 0) {
+				int above = (y - 1) * stride;
+				for (int x = Math.max(0, from - 1); x <= Math.min(width - 1, to + 1); x++) {
+					if (x < corridorFrom[y - 1] || x > corridorTo[y - 1]) {
+						costMatrix[above + x] = UNREACHABLE;
+					}
+				}
+			}
+
+			for (int x = from; x <= to; x++) {
+				this.calcCoordinateCost(y, x);
+			}
+		}
+	}
+
+	/**
+	 * Climbs up from a given column of the last row using each
+	 * pixel's parent value, which is the column offset to the parent.
+	 * @param idx - column in the last row.
+	 * @param seam - array to fill with the seam indexes.
 	 */
-	private int[] calculateIncreasedSeamIdxs(int[] seam){
-		int[] expected = new int[seam.length];
+	private void backtrackSeam(int idx, int[] seam) {
+		int j = frameHeight - 1;
+		for (int i = seam.length - 1; i >= 0; i--) {
+			seam[i] = idx;
+			idx += parents[j * stride + idx];
+			j--;
+		}
+	}
 
-		for (int i = 0; i < seam.length; i++){
-			int s = 0; // Number of seams preceding current seam
-			for (int[] shiftedSeam : shiftedSeams) {
-				if (seam[i] >= shiftedSeam[i]) s++;
+	/**
+	 * Finds up to a given number of non-crossing seams in the current cost matrix.
+	 * The last row columns are visited from the cheapest one, and each seam that
+	 * stays strictly between its already taken neighbors in all the rows is taken,
+	 * as long as it is within the batch tolerance.
+	 * @param count - maximal number of seams.
+	 * @return the seams, ordered from right to left.
+	 */
+	private int[][] findSeamsBatch(int count) {
+		if (logger.isLoggable(Level.DEBUG))
+			logger.log(Level.DEBUG, "Finding a batch of up to " + count + " seams, starting with seam #" + k);
+		int width = frameWidth - k + 1;
+		int lastRow = (frameHeight - 1) * stride;
+
+		long minCost = costMatrix[lastRow + this.findMinCostIdx(lastRow, width)];
+		double maxCost = minCost + batchTolerance * Math.max(Math.abs(minCost), 1);
+
+		// Sort the last row columns within the tolerance by their cost. The sort
+		// is stable, so the first one is the same column findSeam would choose.
+		int[] columns = new int[width];
+		int candidates = 0;
+		for (int x = 0; x < width; x++)
+			if (costMatrix[lastRow + x] <= maxCost) columns[candidates++] = x;
+		this.sortByCost(columns, candidates, lastRow);
+
+		// Taken seams by their last row column.
+		TreeMap<Integer, int[]> taken = new TreeMap<>();
+		int[] seam = new int[frameHeight];
+		for (int i = 0; i < candidates && taken.size() < count; i++) {
+			int idx = columns[i];
+
+			this.backtrackSeam(idx, seam);
+			Map.Entry<Integer, int[]> left = taken.lowerEntry(idx);
+			Map.Entry<Integer, int[]> right = taken.higherEntry(idx);
+			if (isBetween(seam, left == null ? null : left.getValue(), right == null ? null : right.getValue())) {
+				taken.put(idx, seam);
+				seam = new int[frameHeight];
 			}
-			expected[i] = seam[i] + (2 * s);
 		}
 
-		// If the new seam has a smaller x coordinate then the
-		// previous ones, shift them by 1 to the right.
-		for (int i = 0; i < seam.length; i++) {
-			for (int[] s : increasedSeams) {
-				if (expected[i] <= s[i]) s[i]++;
+		return taken.descendingMap().values().toArray(new int[0][]);
+	}
+
+	/**
+	 * Sorts the first given number of columns by their cost in a given row of the
+	 * cost matrix, keeping the order of the columns of the same cost (a bottom-up
+	 * merge sort).
+	 */
+	private void sortByCost(int[] columns, int length, int row) {
+		int[] src = columns;
+		int[] dst = new int[length];
+		for (int size = 1; size < length; size *= 2) {
+			for (int from = 0; from < length; from += 2 * size) {
+				int mid = Math.min(from + size, length);
+				int to = Math.min(from + 2 * size, length);
+				int i = from, j = mid;
+				for (int out = from; out < to; out++) {
+					if (j == to || (i < mid && costMatrix[row + src[i]] <= costMatrix[row + src[j]]))
+						dst[out] = src[i++];
+					else
+						dst[out] = src[j++];
+				}
 			}
+			int[] sorted = dst;
+			dst = src;
+			src = sorted;
 		}
 
-		return expected;
+		if (src != columns)
+			System.arraycopy(src, 0, columns, 0, length);
+	}
+
+	/**
+	 * Returns true if a given seam is strictly right to the left seam
+	 * and strictly left to the right seam in all the rows.
+	 * A null neighbor represents the image border.
+	 */
+	private static boolean isBetween(int[] seam, int[] left, int[] right) {
+		for (int y = 0; y < seam.length; y++) {
+			if (left != null && left[y] >= seam[y]) return false;
+			if (right != null && right[y] <= seam[y]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Find the index of the minimum value for a given
+	 * row of the cost matrix.
+	 * @param row - offset of the row in the cost matrix.
+	 * @param width - number of relevant entries in the row.
+	 * @return the resulted index (relative to the row).
+	 */
+	private int findMinCostIdx(int row, int width) {
+		int minIdx = 0;
+		long min = costMatrix[row];
+
+		for (int i = 1; i < width; i++) {
+			if (costMatrix[row + i] < min) {
+				min = costMatrix[row + i];
+				minIdx = i;
+			}
+		}
+
+		return minIdx;
 	}
 
 	/**
 	 * Calculates the original indexes of a given seam (which indexes
-	 * are relative to the current cost matrix).
+	 * are relative to the current cost matrix), before it is removed.
 	 * @param seam
 	 * @return
 	 */
 	private int[] restoreSeamIdxs(int[] seam) {
 		int[] restored = new int[seam.length];
-
-		for (int i = 0; i < seam.length; i++) {
-			int s = 0; // Number of seams preceding current seam
-			for (int[] shiftedSeam : shiftedSeams) {
-				if (seam[i] >= shiftedSeam[i]) s++;
-			}
-			restored[i] = seam[i] + s;
-		}
+		for (int y = 0; y < seam.length; y++)
+			restored[y] = originalColumns[y * stride + seam[y]];
 
 		return restored;
 	}
 
 	/**
 	 * Calculates and sets the cost for a given coordinate.
+	 * @return true if the cost of the coordinate was changed.
 	 */
-	private void calcCoordinateCost(int y, int x) {
+	private boolean calcCoordinateCost(int y, int x) {
+		int i = y * stride + x;
 		if (y == 0) {
-			return; // Avoid calculating for base case - first row.
+			// Base case - first row.
+			boolean changed = costMatrix[i] != energies[i];
+			costMatrix[i] = energies[i];
+			return changed;
 		}
 
-		long left = Integer.MAX_VALUE;
-		long right = Integer.MAX_VALUE;
+		int width = frameWidth - k;
+		int above = i - stride;
+		long left = Long.MAX_VALUE;
+		long right = Long.MAX_VALUE;
 
-		boolean isBorder = (x == 0 || x == (this.costMatrix[0].length - 1));
+		boolean isBorder = (x == 0 || x == (width - 1));
 		int cv = isBorder ? 0 : Math.abs(greyscale[y][x + 1] - greyscale[y][x - 1]);
 
-		long center = costMatrix[y - 1][x].getEnergy() + cv;
+		long center = costMatrix[above] + cv;
 
 		// Excluding first column
 		if (x != 0) {
 			int newTopLeftEdge = Math.abs(greyscale[y - 1][x] - greyscale[y][x - 1]);
 			int cl = (isBorder ? 0 : cv) + newTopLeftEdge;
-			left = costMatrix[y - 1][x - 1].getEnergy() + cl;
+			left = costMatrix[above - 1] + cl;
 		}
 
 		// Excluding last column
-		if (x != (this.costMatrix[0].length - 1)) {
+		if (x != (width - 1)) {
 			// There is no left edge for the first column.
 			int newTopRightEdge = Math.abs(greyscale[y][x + 1] - greyscale[y - 1][x]);
 			int cr = (isBorder ? 0 : cv) + newTopRightEdge;
 
-			right = costMatrix[y - 1][x + 1].getEnergy() + cr;
+			right = costMatrix[above + 1] + cr;
 		}
 
 		// Get the parent of the minimum value from the different directions.
-		path p = getPathByMinimum(left, center, right);
+		byte p = getPathByMinimum(left, center, right);
 
 		long val;
-		if (p == path.L) val = left;
-		else if (p == path.V) val = center;
+		if (p == PARENT_L) val = left;
+		else if (p == PARENT_V) val = center;
 		else val = right;
 
 		// Set the calculated energy and parent of this coordinate.
-		costMatrix[y][x].setEnergy(costMatrix[y][x].getEnergy() + val);
-		costMatrix[y][x].setParent(p);
+		long cost = energies[i] + val;
+		boolean changed = costMatrix[i] != cost;
+		costMatrix[i] = cost;
+		parents[i] = p;
+		return changed;
 	}
 
 	/**
 	 * Returns the chosen parent path by the minimum value.
 	 */
-	private path getPathByMinimum(long a, long b, long c) {
+	private byte getPathByMinimum(long a, long b, long c) {
 		long minVal = Math.min(a, Math.min(b, c));
-		if (minVal == a) return path.L;
-		if (minVal == b) return path.V;
-		return path.R;
+		if (minVal == a) return PARENT_L;
+		if (minVal == b) return PARENT_V;
+		return PARENT_R;
 	}
 }
@@ -0,0 +1,306 @@
+package edu.cg;
+
+import java.awt.image.BufferedImage;
+
+import edu.cg.SeamsCarver.Direction;
+
+/**
+ * Retargets an image to a given width and height by seam carving in both directions.
+ * While the image is reduced, the vertical and the horizontal seams are interleaved:
+ * each step compares the forward energy cost of the cheapest next seam in each
+ * direction (per seam pixel, as the seams differ in length) and carves a few seams
+ * in the cheaper direction. The costs are compared on a downsampled image, unless it
+ * is too small, and the carver of a direction goes on from its state for as long as
+ * the direction keeps winning. Once a single dimension is left, a single carver
+ * reduces it to its output size. The enlargement, if any, is done afterwards.
+ */
+public class SeamsRetargeter extends ImageProcessor {
+	// Default number of seams carved in a direction before the directions are compared again.
+	private static final int DEFAULT_STEP = 8;
+
+	// Number of pixels in each axis of a block of the image the directions are compared on.
+	private static final int COARSE_SCALE = 4;
+
+	// Minimal size of the downsampled image, below which the directions are compared exactly.
+	private static final int MIN_COARSE_SIZE = 16;
+
+	// MARK: Fields
+	private final Logger carverLogger; // The logger the carvers report to.
+	private boolean[][] imageMask;     // Represents the mask of the image being retargeted.
+	private boolean[][] keepMask;      // Represents the protected pixels of the image being retargeted (may be null).
+	private EnergyFunction energy;     // Calculates the energies of the image being retargeted.
+	private int step;                  // Number of seams carved in a direction before the directions are compared again.
+	private final CarvingMetrics metrics; // The metrics of all the carvers, including the ones only compared.
+	private Progress progress;         // Receives the number of seams carved in both directions.
+	private CarvingWorkspace.Pool workspaces; // Lends the workspaces of the carvers.
+	private CarvingWorkspace verticalWorkspace;   // The workspace of the vertical carvers of a retargeting.
+	private CarvingWorkspace horizontalWorkspace; // The workspace of the horizontal carvers of a retargeting.
+
+	public SeamsRetargeter(Logger logger, BufferedImage workingImage, int outWidth, int outHeight,
+			RGBWeights rgbWeights, boolean[][] imageMask) {
+		super(Logger.prefixed(logger, "Retargeting: "), workingImage, rgbWeights, outWidth, outHeight);
+
+		carverLogger = logger;
+		this.imageMask = imageMask;
+		step = DEFAULT_STEP;
+		energy = EnergyFunction.GRADIENT;
+		metrics = new CarvingMetrics();
+		progress = Progress.NONE;
+		workspaces = new CarvingWorkspace.Pool(2);
+	}
+
+	/**
+	 * Sets the progress which receives the number of seams carved out of all the seams
+	 * in both directions, and which may cancel the retargeting between seams.
+	 */
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Sets the pixels which the seams avoid, such as faces (null if there are none).
+	 */
+	public void setKeepMask(boolean[][] keepMask) {
+		this.keepMask = keepMask;
+	}
+
+	/**
+	 * Sets the function the energies of the pixels are calculated with.
+	 */
+	public void setEnergyFunction(EnergyFunction energy) {
+		this.energy = energy;
+	}
+
+	/**
+	 * Sets the pool the workspaces of the carvers are borrowed from, for the whole retargeting.
+	 * The carvers of each direction share a workspace, as they run one after the other.
+	 */
+	public void setWorkspacePool(CarvingWorkspace.Pool workspaces) {
+		this.workspaces = workspaces;
+	}
+
+	/**
+	 * Sets the number of seams carved in a direction before the directions are compared again.
+	 * A step of 1 compares them before every seam, which is the closest to the greedy
+	 * order, at the cost of downsampling the image for each seam.
+	 */
+	public void setStep(int step) {
+		if (step < 1)
+			throw new IllegalArgumentException("Retargeting step must be positive");
+
+		this.step = step;
+	}
+
+	public BufferedImage retarget() {
+		verticalWorkspace = workspaces.borrow();
+		horizontalWorkspace = workspaces.borrow();
+		try {
+			return this.retargetWithWorkspaces();
+		} finally {
+			workspaces.release(verticalWorkspace);
+			workspaces.release(horizontalWorkspace);
+			verticalWorkspace = null;
+			horizontalWorkspace = null;
+		}
+	}
+
+	private BufferedImage retargetWithWorkspaces() {
+		logger.log("Retargeting [" + inWidth + "][" + inHeight + "] to [" + outWidth + "][" + outHeight + "]...");
+		BufferedImage img = duplicateWorkingImage();
+		int verticalSeams = 0;
+		int horizontalSeams = 0;
+		SeamsCarver active = null; // The carver of the last step, which the next step may go on with.
+
+		// Reduce both dimensions, in the order of the cheapest seams.
+		while (img.getWidth() > outWidth || img.getHeight() > outHeight) {
+			int width = img.getWidth();
+			int height = img.getHeight();
+			SeamsCarver sc;
+			int seams;
+			if (width > outWidth && height > outHeight) {
+				sc = this.cheaperCarver(img, active);
+				seams = step;
+			} else {
+				sc = this.carver(img, active, width > outWidth ? Direction.VERTICAL : Direction.HORIZONTAL);
+				seams = Math.max(width - outWidth, height - outHeight);
+			}
+
+			if (sc != active) {
+				if (active != null) metrics.add(active.getMetrics());
+				active = sc;
+			}
+			img = sc.reduceBy(seams);
+			this.updateMasks(sc);
+			verticalSeams += width - img.getWidth();
+			horizontalSeams += height - img.getHeight();
+		}
+		if (active != null)
+			metrics.add(active.getMetrics());
+
+		if (verticalSeams > 0 && horizontalSeams > 0)
+			logger.log("Removed " + verticalSeams + " vertical and " + horizontalSeams + " horizontal seams.");
+
+		// Enlarge the dimensions that are still too small.
+		if (img.getWidth() < outWidth)
+			img = enlarge(img, outWidth, Direction.VERTICAL);
+		if (img.getHeight() < outHeight)
+			img = enlarge(img, outHeight, Direction.HORIZONTAL);
+
+		logger.log("Done retargeting.");
+		logger.log("Metrics: " + metrics);
+		return img;
+	}
+
+	public boolean[][] getMaskAfterRetargeting() {
+		return imageMask;
+	}
+
+	public boolean[][] getKeepMaskAfterRetargeting() {
+		return keepMask;
+	}
+
+	/**
+	 * Returns the timing and counters of all the carvers of the retargeting.
+	 */
+	public CarvingMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Returns the carver of the direction whose cheapest next seam costs less per pixel.
+	 * The carver of the last step is returned if its direction wins, so only the other
+	 * direction is carved by a new carver.
+	 */
+	private SeamsCarver cheaperCarver(BufferedImage img, SeamsCarver active) {
+		Direction direction = this.coarseCheaperDirection(img);
+		if (direction != null)
+			return this.carver(img, active, direction);
+
+		// Too small to downsample, so the next seams of both directions are compared exactly.
+		SeamsCarver vertical = this.carver(img, active, Direction.VERTICAL);
+		SeamsCarver horizontal = this.carver(img, active, Direction.HORIZONTAL);
+		double verticalCost = vertical.findCheapestSeamCost() / (double) img.getHeight();
+		double horizontalCost = horizontal.findCheapestSeamCost() / (double) img.getWidth();
+
+		SeamsCarver sc = verticalCost <= horizontalCost ? vertical : horizontal;
+		SeamsCarver other = sc == vertical ? horizontal : vertical;
+		if (other != active)
+			metrics.add(other.getMetrics());
+		return sc;
+	}
+
+	/**
+	 * Compares the cheapest seams of both directions on the image downsampled by blocks
+	 * of COARSE_SCALE x COARSE_SCALE pixels, whose channels are averaged (a block is
+	 * masked or protected if any of its pixels is, and the energy input is averaged as well).
+	 * @return the cheaper direction, or null if the image is too small to downsample.
+	 */
+	private Direction coarseCheaperDirection(BufferedImage img) {
+		int width = img.getWidth();
+		int height = img.getHeight();
+		int scale = COARSE_SCALE;
+		int coarseWidth = (width + scale - 1) / scale;
+		int coarseHeight = (height + scale - 1) / scale;
+		if (coarseWidth < MIN_COARSE_SIZE || coarseHeight < MIN_COARSE_SIZE)
+			return null;
+
+		PixelBuffer pixels = PixelBuffer.of(img);
+		int[][] input = energy.input();
+		PixelBuffer coarse = new PixelBuffer(coarseWidth, coarseHeight);
+		boolean[][] coarseMask = new boolean[coarseHeight][coarseWidth];
+		boolean[][] coarseKeepMask = keepMask == null ? null : new boolean[coarseHeight][coarseWidth];
+		int[][] coarseInput = input == null ? null : new int[coarseHeight][coarseWidth];
+		for (int cy = 0; cy < coarseHeight; cy++) {
+			int toY = Math.min(height, (cy + 1) * scale);
+			for (int cx = 0; cx < coarseWidth; cx++) {
+				int toX = Math.min(width, (cx + 1) * scale);
+				int r = 0, g = 0, b = 0;
+				long inputSum = 0;
+				boolean masked = false;
+				boolean kept = false;
+				for (int y = cy * scale; y < toY; y++) {
+					for (int x = cx * scale; x < toX; x++) {
+						int rgb = pixels.get(x, y);
+						r += (rgb >> 16) & 0xFF;
+						g += (rgb >> 8) & 0xFF;
+						b += rgb & 0xFF;
+						if (input != null) inputSum += input[y][x];
+						if (imageMask != null) masked |= imageMask[y][x];
+						if (keepMask != null) kept |= keepMask[y][x];
+					}
+				}
+
+				int count = (toY - cy * scale) * (toX - cx * scale);
+				coarse.set(cx, cy, PixelBuffer.rgb(r / count, g / count, b / count));
+				if (coarseInput != null)
+					coarseInput[cy][cx] = (int) (inputSum / count);
+				coarseMask[cy][cx] = masked;
+				if (kept) coarseKeepMask[cy][cx] = true;
+			}
+		}
+
+		BufferedImage coarseImg = coarse.toImage(BufferedImage.TYPE_INT_RGB);
+		EnergyFunction coarseEnergy = coarseInput == null ? energy : energy.withInput(coarseInput);
+		SeamsCarver vertical = this.coarseCarver(coarseImg, coarseWidth - 1, coarseMask, coarseKeepMask,
+				coarseEnergy, Direction.VERTICAL, verticalWorkspace);
+		SeamsCarver horizontal = this.coarseCarver(coarseImg, coarseHeight - 1, coarseMask, coarseKeepMask,
+				coarseEnergy, Direction.HORIZONTAL, horizontalWorkspace);
+		double verticalCost = vertical.findCheapestSeamCost() / (double) coarseHeight;
+		double horizontalCost = horizontal.findCheapestSeamCost() / (double) coarseWidth;
+		metrics.add(vertical.getMetrics());
+		metrics.add(horizontal.getMetrics());
+		return verticalCost <= horizontalCost ? Direction.VERTICAL : Direction.HORIZONTAL;
+	}
+
+	private SeamsCarver coarseCarver(BufferedImage img, int outSize, boolean[][] mask, boolean[][] keep,
+			EnergyFunction energy, Direction direction, CarvingWorkspace workspace) {
+		SeamsCarver sc = new SeamsCarver(Logger.NONE, img, outSize, rgbWeights, mask, keep, direction);
+		sc.setForEachPool(getForEachPool());
+		sc.setEnergyFunction(energy);
+		sc.setWorkspace(workspace.coarse());
+		return sc;
+	}
+
+	private BufferedImage enlarge(BufferedImage img, int outSize, Direction direction) {
+		SeamsCarver sc = carver(img, outSize, direction);
+		BufferedImage result = sc.resize();
+		this.updateMasks(sc);
+		metrics.add(sc.getMetrics());
+		return result;
+	}
+
+	// Takes the masks and the energy input of the image a given carver resized.
+	private void updateMasks(SeamsCarver sc) {
+		imageMask = sc.getMaskAfterSeamCarving();
+		if (keepMask != null)
+			keepMask = sc.getKeepMaskAfterSeamCarving();
+		energy = sc.getEnergyFunctionAfterSeamCarving();
+	}
+
+	/**
+	 * Returns the carver of the last step if it reduces in a given direction and has seams
+	 * left, or otherwise a new carver which reduces the image in that direction (by up to
+	 * half of its size, which is the most a carver removes).
+	 */
+	private SeamsCarver carver(BufferedImage img, SeamsCarver active, Direction direction) {
+		if (active != null && active.getDirection() == direction && active.getSeamsLeft() > 0)
+			return active;
+
+		int size = direction == Direction.VERTICAL ? img.getWidth() : img.getHeight();
+		int outSize = direction == Direction.VERTICAL ? outWidth : outHeight;
+		return this.carver(img, Math.max(outSize, size - size / 2), direction);
+	}
+
+	private SeamsCarver carver(BufferedImage img, int outSize, Direction direction) {
+		SeamsCarver sc = new SeamsCarver(carverLogger, img, outSize, rgbWeights, imageMask, keepMask, direction);
+		sc.setForEachPool(getForEachPool());
+		sc.setEnergyFunction(energy);
+		sc.setWorkspace(direction == Direction.VERTICAL ? verticalWorkspace : horizontalWorkspace);
+
+		// Each carver moves one dimension towards its output size.
+		int total = Math.abs(inWidth - outWidth) + Math.abs(inHeight - outHeight);
+		int left = Math.abs(img.getWidth() - outWidth) + Math.abs(img.getHeight() - outHeight);
+		sc.setProgress(Progress.part(progress, total - left, total));
+		return sc;
+	}
+}
@@ -0,0 +1,196 @@
+package edu.cg;
+
+import java.util.Arrays;
+
+/**
+ * Represents a mask as the runs of masked pixels in each of its rows.
+ * A mask with few masked pixels takes little memory, its unmasked rows are answered
+ * at once, and removing a column of a row only moves the runs after it.
+ * The pixels of a row are set from left to right, and each run is kept as its first
+ * and last columns.
+ */
+public class SparseMask {
+	public final int height;
+	private final int[][] runs;  // The first and last column of each run of each row, in order.
+	private final int[] lengths; // Number of the used entries of each row of runs (twice its number of runs).
+	private long size;           // Number of masked pixels.
+
+	/**
+	 * Creates an empty mask of a given number of rows.
+	 */
+	public SparseMask(int height) {
+		this.height = height;
+		runs = new int[height][];
+		lengths = new int[height];
+	}
+
+	/**
+	 * Returns the sparse mask of a given mask (an empty one for null).
+	 */
+	public static SparseMask of(boolean[][] mask, int height) {
+		SparseMask sparse = new SparseMask(height);
+		if (mask == null)
+			return sparse;
+
+		for (int y = 0; y < height; y++) {
+			boolean[] row = mask[y];
+			for (int x = 0; x < row.length; x++)
+				if (row[x]) sparse.set(x, y);
+		}
+
+		return sparse;
+	}
+
+	public final boolean isEmpty() {
+		return size == 0;
+	}
+
+	public final long size() {
+		return size;
+	}
+
+	public final boolean get(int x, int y) {
+		int n = lengths[y];
+		if (n == 0)
+			return false;
+
+		int run = this.runAtOrBefore(y, x);
+		return run >= 0 && x <= runs[y][2 * run + 1];
+	}
+
+	/**
+	 * Returns true if any pixel of a given row between two columns (inclusive) is masked.
+	 */
+	public final boolean intersects(int y, int from, int to) {
+		if (lengths[y] == 0)
+			return false;
+
+		int run = this.runAtOrBefore(y, to);
+		return run >= 0 && runs[y][2 * run + 1] >= from;
+	}
+
+	/**
+	 * Masks a pixel, which is not left to a masked pixel of its row.
+	 */
+	public final void set(int x, int y) {
+		int[] row = runs[y];
+		int n = lengths[y];
+		if (n > 0) {
+			int last = row[n - 1];
+			if (x < last)
+				throw new IllegalArgumentException("Mask pixels must be set from left to right");
+			if (x == last)
+				return;
+
+			if (x == last + 1) {
+				row[n - 1] = x;
+				size++;
+				return;
+			}
+		}
+
+		if (row == null || row.length == n) {
+			row = (row == null) ? new int[4] : Arrays.copyOf(row, 2 * n);
+			runs[y] = row;
+		}
+
+		row[n] = x;
+		row[n + 1] = x;
+		lengths[y] = n + 2;
+		size++;
+	}
+
+	/**
+	 * Removes a pixel of a given row, and shifts the pixels right to it one column to the left.
+	 */
+	public final void removeColumn(int x, int y) {
+		int n = lengths[y];
+		if (n == 0)
+			return;
+
+		int[] row = runs[y];
+		int run = this.runAtOrBefore(y, x);
+		int next = 2 * (run + 1); // The entry of the first run right to the pixel.
+		if (run >= 0 && x <= row[2 * run + 1]) {
+			size--;
+			if (row[2 * run] == row[2 * run + 1]) {
+				// The run is gone.
+				System.arraycopy(row, next, row, next - 2, n - next);
+				n -= 2;
+				next -= 2;
+				lengths[y] = n;
+			} else {
+				row[2 * run + 1]--;
+			}
+		}
+
+		for (int i = next; i < n; i++)
+			row[i]--;
+
+		// Removing the only unmasked pixel between two runs joins them.
+		if (next > 0 && next < n && row[next] == row[next - 1] + 1) {
+			row[next - 1] = row[next + 1];
+			System.arraycopy(row, next + 2, row, next, n - next - 2);
+			lengths[y] = n - 2;
+		}
+	}
+
+	// Returns the number of runs of a given row.
+	public final int runs(int y) {
+		return lengths[y] / 2;
+	}
+
+	// Returns the first column of a given run of a given row.
+	public final int runFrom(int y, int run) {
+		return runs[y][2 * run];
+	}
+
+	// Returns the last column of a given run of a given row.
+	public final int runTo(int y, int run) {
+		return runs[y][2 * run + 1];
+	}
+
+	public final SparseMask duplicate() {
+		SparseMask dup = new SparseMask(height);
+		for (int y = 0; y < height; y++) {
+			if (lengths[y] > 0)
+				dup.runs[y] = Arrays.copyOf(runs[y], lengths[y]);
+			dup.lengths[y] = lengths[y];
+		}
+		dup.size = size;
+		return dup;
+	}
+
+	/**
+	 * Returns the mask as a matrix of a given width, dropping the pixels beyond it.
+	 */
+	public boolean[][] toDense(int width) {
+		boolean[][] mask = new boolean[height][width];
+		if (size == 0)
+			return mask;
+
+		for (int y = 0; y < height; y++) {
+			for (int run = 0; run < runs(y); run++) {
+				int to = Math.min(width - 1, runTo(y, run));
+				for (int x = runFrom(y, run); x <= to; x++)
+					mask[y][x] = true;
+			}
+		}
+
+		return mask;
+	}
+
+	// Returns the last run of a row which starts at or before a given column (-1 if none does).
+	private int runAtOrBefore(int y, int x) {
+		int[] row = runs[y];
+		int lo = 0;
+		int hi = lengths[y] / 2 - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (row[2 * mid] <= x) lo = mid + 1;
+			else hi = mid - 1;
+		}
+
+		return hi;
+	}
+}
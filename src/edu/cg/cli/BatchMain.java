@@ -0,0 +1,40 @@
+package edu.cg.cli;
+
+import java.util.List;
+
+/**
+ * The headless batch application.
+ * Applies an operation of the menu window to an image or to a directory of images,
+ * without a display.
+ */
+public class BatchMain {
+
+	public static void main(String[] args) {
+		System.exit(run(args));
+	}
+
+	/**
+	 * Runs the batch application.
+	 * @return - the exit status: 0 if all the images were processed, 1 if some failed,
+	 *           and 2 if the arguments are invalid.
+	 */
+	public static int run(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		Options options;
+		List<ImageJob> jobs;
+		try {
+			options = Options.parse(args);
+			jobs = ImageJob.of(options);
+		} catch (Exception e) {
+			System.err.println(e.getMessage());
+			System.err.println(Options.usage());
+			return 2;
+		}
+
+		BatchScheduler.Summary summary = new BatchScheduler(options, options.workers, options.ioThreads,
+				options.memoryBudget).run(jobs);
+		summary.print(System.out);
+		return summary.failures() == 0 ? 0 : 1;
+	}
+}
@@ -0,0 +1,348 @@
+package edu.cg.cli;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.cg.CarvingWorkspace;
+import edu.cg.Logger;
+
+/**
+ * Processes the jobs of the batch application in a pipeline of three stages:
+ * decoding, processing and encoding.
+ * The decoding and the encoding block on I/O, and run on their own threads, while
+ * the CPU bound processing runs on a bounded number of workers. That way the I/O of
+ * some images overlaps with the processing of others.
+ * The images in flight, in any of the stages, are bounded by a memory budget.
+ * The memory of each job is estimated from the dimensions of its image before the
+ * image is decoded, and a job is decoded only once its memory fits in the budget.
+ * Until then no further job is read, so large images wait rather than run the JVM
+ * out of memory.
+ * A job which is estimated above the whole budget runs alone.
+ * A job which runs out of memory anyway fails alone, but no further job is read until
+ * its memory is released. Any other error stops the batch: the jobs in flight are
+ * cancelled, the summary of the jobs which ended is printed, and the error is thrown.
+ * The workspaces the seam carvers keep between the jobs are charged to the budget as
+ * well, and are dropped when a job does not fit in the budget otherwise.
+ */
+public class BatchScheduler {
+	// Unit of the memory budget permits.
+	private static final long PERMIT_BYTES = 1024;
+
+	// Time the threads of a stopped batch are given to end.
+	private static final long STOP_TIMEOUT_SECONDS = 10;
+
+	// MARK: A result of a single job.
+	public static class Result {
+		public final ImageJob job;
+		public final long memory;   // Estimated memory of the job, in bytes.
+		public final long decodeMillis;
+		public final long processMillis;
+		public final long encodeMillis;
+		public final Exception error; // The failure of the job (null if it succeeded).
+
+		public Result(ImageJob job, long memory, long[] stageMillis, Exception error) {
+			this.job = job;
+			this.memory = memory;
+			decodeMillis = stageMillis[0];
+			processMillis = stageMillis[1];
+			encodeMillis = stageMillis[2];
+			this.error = error;
+		}
+
+		public long millis() {
+			return decodeMillis + processMillis + encodeMillis;
+		}
+
+		public boolean succeeded() {
+			return error == null;
+		}
+	}
+
+	// MARK: A summary of all the jobs.
+	public static class Summary {
+		public final List<Result> results;
+		public final long millis;
+		public final long peakMemory; // Highest estimated memory of the jobs in flight, in bytes.
+
+		public Summary(List<Result> results, long millis, long peakMemory) {
+			this.results = results;
+			this.millis = millis;
+			this.peakMemory = peakMemory;
+		}
+
+		public int failures() {
+			int failures = 0;
+			for (Result result : results)
+				if (!result.succeeded()) failures++;
+			return failures;
+		}
+
+		public void print(PrintStream out) {
+			long decode = 0, process = 0, encode = 0;
+			for (Result result : results) {
+				decode += result.decodeMillis;
+				process += result.processMillis;
+				encode += result.encodeMillis;
+			}
+
+			out.println("Processed " + (results.size() - failures()) + " of " + results.size() + " images in "
+					+ millis + " ms, peak estimated memory " + String.format("%.1f", peakMemory / (double) (1 << 20)) + " MB.");
+			out.println("Total stage times: decode " + decode + " ms, process " + process + " ms, encode " + encode + " ms.");
+			for (Result result : results)
+				if (!result.succeeded())
+					out.println("Failed: " + result.job.input + ": " + result.error);
+		}
+	}
+
+	// MARK: Fields
+	private final Options options;
+	private final int workers;
+	private final int ioThreads;
+	private final int budgetPermits;
+	private final Semaphore memory;
+	private final AtomicLong inFlight;
+	private final AtomicLong peak;
+	private final CarvingWorkspace.Pool workspaces; // Lends the workspaces of the seam carvers to the workers.
+	private final Set<ImageJob> outOfMemoryJobs; // The jobs which ran out of memory, and whose memory is not released yet.
+	private final CompletableFuture<Error> fatal; // Completed with the error which stops the batch.
+
+	/**
+	 * @param workers - number of images processed at the same time.
+	 * @param ioThreads - number of images decoded or encoded at the same time.
+	 * @param memoryBudget - memory all the images in flight may take, in bytes.
+	 */
+	public BatchScheduler(Options options, int workers, int ioThreads, long memoryBudget) {
+		if (workers < 1)
+			throw new IllegalArgumentException("Number of workers must be positive");
+		if (ioThreads < 1)
+			throw new IllegalArgumentException("Number of I/O threads must be positive");
+		if (memoryBudget < PERMIT_BYTES)
+			throw new IllegalArgumentException("Memory budget is too small");
+
+		this.options = options;
+		this.workers = workers;
+		this.ioThreads = ioThreads;
+		budgetPermits = (int) Math.min(Integer.MAX_VALUE, memoryBudget / PERMIT_BYTES);
+		memory = new Semaphore(budgetPermits, true);
+		inFlight = new AtomicLong();
+		peak = new AtomicLong();
+		outOfMemoryJobs = new HashSet<>();
+		fatal = new CompletableFuture<>();
+
+		// A retargeting borrows a workspace for each direction.
+		workspaces = new CarvingWorkspace.Pool(2 * workers, memory, PERMIT_BYTES);
+	}
+
+	/**
+	 * Runs the given jobs, reporting each one as it ends.
+	 * Blocks until all of them have ended, or until an error stops the batch, which is
+	 * then thrown.
+	 */
+	public Summary run(List<ImageJob> jobs) {
+		long start = System.nanoTime();
+		ExecutorService io = Executors.newFixedThreadPool(ioThreads, threads("Batch I/O"));
+		ExecutorService compute = Executors.newFixedThreadPool(workers, threads("Batch worker"));
+		List<CompletableFuture<Result>> futures = new ArrayList<>(); // The futures of the jobs read so far, in order.
+		long[] estimates = new long[jobs.size()];
+
+		// An error stops the stages at once, which also releases the memory a job may wait for.
+		// The stages which did not start yet are rejected, and fail their jobs.
+		fatal.thenRun(() -> {
+			io.shutdownNow();
+			compute.shutdownNow();
+		});
+		try {
+			for (ImageJob job : jobs) {
+				long estimate = job.estimateMemory(options);
+				estimates[futures.size()] = estimate;
+				int permits = (int) Math.min(budgetPermits, (estimate + PERMIT_BYTES - 1) / PERMIT_BYTES);
+
+				// Backpressure: wait until the job fits in the budget.
+				this.awaitOutOfMemoryJobs();
+				if (fatal.isDone())
+					break;
+				workspaces.acquire(permits);
+				if (fatal.isDone()) {
+					memory.release(permits);
+					break;
+				}
+				peak.accumulateAndGet(inFlight.addAndGet(estimate), Math::max);
+				futures.add(this.submit(job, estimate, io, compute).whenComplete((result, e) -> {
+					inFlight.addAndGet(-estimate);
+					memory.release(permits);
+					this.released(job);
+				}));
+			}
+
+			// Wait for each job, or for an error which stops the batch.
+			for (CompletableFuture<Result> future : futures)
+				CompletableFuture.anyOf(future, fatal).join();
+
+			if (fatal.isDone()) {
+				awaitTermination(io);
+				awaitTermination(compute);
+			}
+
+			List<Result> results = new ArrayList<>();
+			for (int i = 0; i < futures.size(); i++) {
+				CompletableFuture<Result> future = futures.get(i);
+				if (future.isDone() || !future.cancel(true))
+					results.add(future.join());
+				else
+					results.add(new Result(jobs.get(i), estimates[i], new long[3], stopped()));
+			}
+
+			Summary summary = new Summary(results, (System.nanoTime() - start) / 1_000_000, peak.get());
+			if (fatal.isDone()) {
+				Error error = fatal.join();
+				int unread = jobs.size() - futures.size();
+				System.err.println("Stopped by " + error + (unread > 0 ? ", " + unread + " images were not read." : "."));
+				summary.print(System.out);
+				throw error;
+			}
+
+			return summary;
+		} finally {
+			io.shutdown();
+			compute.shutdown();
+		}
+	}
+
+	// Returns a factory of daemon threads, so the threads of a stopped batch never keep the JVM running.
+	private static ThreadFactory threads(String name) {
+		AtomicInteger count = new AtomicInteger();
+		return r -> {
+			Thread thread = new Thread(r, name + " " + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	// Waits until the threads of a stopped batch end, or until the stop timeout passes.
+	private static void awaitTermination(ExecutorService executor) {
+		try {
+			executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Submits the stages of a job, each one to its executor once the previous one ends.
+	 * The resulting future always completes normally, with the failure in the result.
+	 */
+	private CompletableFuture<Result> submit(ImageJob job, long estimate, ExecutorService io,
+			ExecutorService compute) {
+		String name = job.input.getName();
+		Logger logger = options.verbose ? (s) -> System.err.println(name + ": " + s) : Logger.NONE;
+		long[] stageMillis = new long[3];
+
+		return CompletableFuture.supplyAsync(() -> {
+			long stageStart = System.nanoTime();
+			try {
+				return job.decode();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				stageMillis[0] = (System.nanoTime() - stageStart) / 1_000_000;
+			}
+		}, io).thenApplyAsync(decoded -> {
+			long stageStart = System.nanoTime();
+			try {
+				return job.process(decoded, options, workspaces, logger);
+			} finally {
+				stageMillis[1] = (System.nanoTime() - stageStart) / 1_000_000;
+			}
+		}, compute).thenApplyAsync((BufferedImage img) -> {
+			long stageStart = System.nanoTime();
+			try {
+				job.encode(img);
+				return img;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			} finally {
+				stageMillis[2] = (System.nanoTime() - stageStart) / 1_000_000;
+			}
+		}, io).handle((img, e) -> {
+			Exception error = e == null ? null : this.failure(job, e);
+			Result result = new Result(job, estimate, stageMillis, error);
+			if (error == null)
+				System.out.println(name + ": " + options.operation.title + " -> " + job.output + " ("
+						+ result.millis() + " ms)");
+			else
+				System.err.println(name + ": failed: " + error);
+
+			return result;
+		});
+	}
+
+	/**
+	 * Returns the original failure of a stage.
+	 * An out of memory error means the estimate was too low, and the other jobs may still
+	 * fit, so it fails the job alone. Any other error fails the job, and stops the batch.
+	 */
+	private Exception failure(ImageJob job, Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null)
+			e = e.getCause();
+		if (e instanceof UncheckedIOException)
+			e = e.getCause();
+
+		if (e instanceof RejectedExecutionException && fatal.isDone())
+			return stopped();
+		if (e instanceof Exception)
+			return (Exception) e;
+		if (e instanceof OutOfMemoryError) {
+			synchronized (this) {
+				outOfMemoryJobs.add(job);
+			}
+			return new RuntimeException(e);
+		}
+		if (e instanceof Error)
+			fatal.complete((Error) e);
+
+		return new RuntimeException(e);
+	}
+
+	// Returns the failure of a job which the error that stopped the batch did not let end.
+	private Exception stopped() {
+		return new CancellationException("Stopped by " + fatal.join());
+	}
+
+	// Called once the permits of a job are released.
+	private synchronized void released(ImageJob job) {
+		if (outOfMemoryJobs.remove(job))
+			notifyAll();
+	}
+
+	// Waits until the memory of the jobs which ran out of memory is released.
+	private synchronized void awaitOutOfMemoryJobs() {
+		boolean interrupted = false;
+		while (!outOfMemoryJobs.isEmpty()) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+}
@@ -0,0 +1,110 @@
+package edu.cg.cli;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import edu.cg.PixelBuffer;
+
+/**
+ * Helpers for reading and writing the images of the batch application.
+ */
+public class ImageFiles {
+	private static final Set<String> readableSuffixes = new HashSet<>(
+			Arrays.asList(ImageIO.getReaderFileSuffixes()));
+
+	private ImageFiles() {
+	}
+
+	/**
+	 * Returns the images of a given directory, sorted by name.
+	 */
+	public static File[] listImages(File dir) throws IOException {
+		File[] files = dir.listFiles(f -> f.isFile() && readableSuffixes.contains(suffix(f.getName())));
+		if (files == null)
+			throw new IOException("Can't list directory: " + dir);
+
+		Arrays.sort(files);
+		return files;
+	}
+
+	public static BufferedImage read(File file) throws IOException {
+		BufferedImage img = ImageIO.read(file);
+		if (img == null)
+			throw new IOException("Can't read image: " + file);
+		return img;
+	}
+
+	/**
+	 * Reads the dimensions of an image from its header, without decoding it.
+	 */
+	public static Dimension readSize(File file) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext())
+				throw new IOException("Can't read image: " + file);
+
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				return new Dimension(reader.getWidth(0), reader.getHeight(0));
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Reads a mask image, in which every non black pixel is masked.
+	 */
+	public static boolean[][] readMask(File file, int width, int height) throws IOException {
+		PixelBuffer pixels = PixelBuffer.of(read(file));
+		if (pixels.width != width || pixels.height != height)
+			throw new IOException("Mask " + file.getName() + " is [" + pixels.width + "][" + pixels.height
+					+ "] while the image is [" + width + "][" + height + "]");
+
+		boolean[][] mask = new boolean[height][width];
+		for (int y = 0; y < height; y++) {
+			int offset = pixels.rowOffset(y);
+			for (int x = 0; x < width; x++)
+				mask[y][x] = (pixels.pixels[offset + x] & 0xFFFFFF) != 0;
+		}
+
+		return mask;
+	}
+
+	/**
+	 * Writes an image in a given format.
+	 * Images with alpha are written without it if the format does not support alpha.
+	 */
+	public static void write(BufferedImage img, String format, File file) throws IOException {
+		if (ImageIO.write(img, format, file))
+			return;
+
+		BufferedImage rgb = PixelBuffer.of(img).toImage(BufferedImage.TYPE_INT_RGB);
+		if (!ImageIO.write(rgb, format, file))
+			throw new IOException("No writer for format: " + format);
+	}
+
+	// Returns the lower case suffix of a file name, or an empty string.
+	public static String suffix(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+	}
+
+	// Returns a file name without its suffix.
+	public static String baseName(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot < 0 ? name : name.substring(0, dot);
+	}
+}
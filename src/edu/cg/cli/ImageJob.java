@@ -0,0 +1,144 @@
+package edu.cg.cli;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import edu.cg.CarvingWorkspace;
+import edu.cg.Logger;
+
+/**
+ * Represents the processing of a single image of the batch application.
+ */
+public class ImageJob {
+	// MARK: Fields
+	public final File input;
+	public final File output;
+	public final File mask;     // The mask image (null if there is none).
+	public final File keep;     // The protection mask image (null if there is none).
+	public final String format;
+
+	public ImageJob(File input, File output, File mask, File keep, String format) {
+		this.input = input;
+		this.output = output;
+		this.mask = mask;
+		this.keep = keep;
+		this.format = format;
+	}
+
+	/**
+	 * Creates the jobs of given options.
+	 * A directory input results in a job for each of its images, whose outputs are
+	 * written to the output directory under the same name.
+	 * Fails before any job runs if two images would be written to the same output, such as
+	 * img.png and img.jpg with --format png (the names are compared ignoring case, as
+	 * some file systems do).
+	 */
+	public static List<ImageJob> of(Options options) throws IOException {
+		List<ImageJob> jobs = new ArrayList<>();
+		if (!options.input.isDirectory()) {
+			if (!options.input.isFile())
+				throw new IOException("No such file or directory: " + options.input);
+
+			File output = options.output;
+			if (output.isDirectory())
+				output = outputFile(output, options.input, options.format);
+			String format = options.format != null ? options.format : ImageFiles.suffix(output.getName());
+			jobs.add(new ImageJob(options.input, output, options.mask, options.keep,
+					format.isEmpty() ? "png" : format));
+			return jobs;
+		}
+
+		if (!options.output.isDirectory() && !options.output.mkdirs())
+			throw new IOException("Can't create output directory: " + options.output);
+
+		Map<String, File> inputs = new HashMap<>(); // The input of each output name.
+		for (File input : ImageFiles.listImages(options.input)) {
+			File mask = maskFile(options.mask, input);
+			File keep = maskFile(options.keep, input);
+			File output = outputFile(options.output, input, options.format);
+			File other = inputs.putIfAbsent(output.getName().toLowerCase(Locale.ROOT), input);
+			if (other != null)
+				throw new IOException("Images " + other.getName() + " and " + input.getName()
+						+ " would both be written to " + output);
+			jobs.add(new ImageJob(input, output, mask, keep, ImageFiles.suffix(output.getName())));
+		}
+
+		return jobs;
+	}
+
+	// Returns the mask file of a given input, from a mask file or a directory of masks (may be null).
+	private static File maskFile(File mask, File input) {
+		return mask != null && mask.isDirectory() ? new File(mask, input.getName()) : mask;
+	}
+
+	// Returns the output file of a given input in a given directory.
+	private static File outputFile(File dir, File input, String format) {
+		String name = input.getName();
+		if (format != null)
+			name = ImageFiles.baseName(name) + "." + format;
+		return new File(dir, name);
+	}
+
+	/**
+	 * Estimates the memory the job takes, from the dimensions in the image header.
+	 * An image whose header can't be read is estimated as 0, as it fails to decode anyway.
+	 */
+	public long estimateMemory(Options options) {
+		try {
+			Dimension size = ImageFiles.readSize(input);
+			return options.operation.estimateMemory(size.width, size.height, options);
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	// MARK: A decoded image with its masks.
+	public static class Decoded {
+		public final BufferedImage img;
+		public final boolean[][] mask;
+		public final boolean[][] keepMask; // Null if there is no protection mask.
+
+		public Decoded(BufferedImage img, boolean[][] mask, boolean[][] keepMask) {
+			this.img = img;
+			this.mask = mask;
+			this.keepMask = keepMask;
+		}
+	}
+
+	/**
+	 * Reads the image and its masks (all false if there is no mask, null if there is no
+	 * protection mask).
+	 */
+	public Decoded decode() throws IOException {
+		BufferedImage img = ImageFiles.read(input);
+		boolean[][] imageMask = mask == null ? new boolean[img.getHeight()][img.getWidth()]
+				: ImageFiles.readMask(mask, img.getWidth(), img.getHeight());
+		boolean[][] keepMask = keep == null ? null : ImageFiles.readMask(keep, img.getWidth(), img.getHeight());
+		return new Decoded(img, imageMask, keepMask);
+	}
+
+	/**
+	 * Applies the operation, with seam carvers which borrow their workspaces from a given pool.
+	 */
+	public BufferedImage process(Decoded decoded, Options options, CarvingWorkspace.Pool workspaces, Logger logger) {
+		return options.operation.apply(logger, decoded.img, decoded.mask, decoded.keepMask, options, workspaces);
+	}
+
+	public void encode(BufferedImage result) throws IOException {
+		ImageFiles.write(result, format, output);
+	}
+
+	/**
+	 * Reads the image and its masks, applies the operation and writes the result.
+	 */
+	public void run(Options options, Logger logger) throws IOException {
+		this.encode(this.process(this.decode(), options, new CarvingWorkspace.Pool(0), logger));
+	}
+}
@@ -0,0 +1,173 @@
+package edu.cg.cli;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+import edu.cg.CarvingWorkspace;
+import edu.cg.ImageProcessor;
+import edu.cg.Logger;
+import edu.cg.ObjectRemover;
+import edu.cg.SeamsCarver;
+import edu.cg.SeamsCarver.Direction;
+import edu.cg.SeamsRetargeter;
+
+/**
+ * The operations of the batch application, which are the ones of the menu window.
+ */
+public enum Operation {
+	GREYSCALE("greyscale", 16) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			ImageProcessor ip = new ImageProcessor(logger, img, options.rgbWeights);
+			ip.setParallelism(options.threads);
+			return ip.greyscale();
+		}
+	},
+
+	HUE("hue", 16) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			ImageProcessor ip = new ImageProcessor(logger, img, options.rgbWeights);
+			ip.setParallelism(options.threads);
+			return ip.changeHue();
+		}
+	},
+
+	RESIZE("resize", 48) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			int outWidth = outWidth(img, options);
+			int outHeight = outHeight(img, options);
+			if (options.resizing == Options.Resizing.NEAREST_NEIGHBOR) {
+				ImageProcessor ip = new ImageProcessor(logger, img, options.rgbWeights, outWidth, outHeight);
+				ip.setParallelism(options.threads);
+				return ip.nearestNeighbor();
+			}
+
+			SeamsRetargeter rt = new SeamsRetargeter(logger, img, outWidth, outHeight, options.rgbWeights, mask);
+			rt.setKeepMask(keepMask);
+			rt.setEnergyFunction(options.energy);
+			rt.setParallelism(options.threads);
+			rt.setWorkspacePool(workspaces);
+			return rt.retarget();
+		}
+	},
+
+	SHOW_SEAMS_VERTICAL("show-seams-vertical", 48) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			int outWidth = img.getWidth() - seamsToShow(options.width, img.getWidth());
+			SeamsCarver sc = new SeamsCarver(logger, img, outWidth, options.rgbWeights, mask, keepMask,
+					Direction.VERTICAL);
+			sc.setEnergyFunction(options.energy);
+			sc.setParallelism(options.threads);
+			return showSeams(sc, Color.RED.getRGB(), workspaces);
+		}
+	},
+
+	SHOW_SEAMS_HORIZONTAL("show-seams-horizontal", 48) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			int outHeight = img.getHeight() - seamsToShow(options.height, img.getHeight());
+			SeamsCarver sc = new SeamsCarver(logger, img, outHeight, options.rgbWeights, mask, keepMask,
+					Direction.HORIZONTAL);
+			sc.setEnergyFunction(options.energy);
+			sc.setParallelism(options.threads);
+			return showSeams(sc, Color.BLACK.getRGB(), workspaces);
+		}
+	},
+
+	REMOVE_OBJECT("remove-object", 48) {
+		@Override
+		public BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask, boolean[][] keepMask,
+				Options options, CarvingWorkspace.Pool workspaces) {
+			boolean[][] imageMask = new boolean[img.getHeight()][img.getWidth()];
+			ObjectRemover or = new ObjectRemover(logger, img, options.rgbWeights, mask, imageMask);
+			or.setKeepMask(keepMask);
+			or.setEnergyFunction(options.energy);
+			or.setParallelism(options.threads);
+			or.setWorkspacePool(workspaces);
+			return or.removeObject();
+		}
+	};
+
+	// MARK: Fields
+	public final String title;
+	public final int bytesPerPixel; // Estimated memory the operation takes per pixel, images included.
+
+	private Operation(String title, int bytesPerPixel) {
+		this.title = title;
+		this.bytesPerPixel = bytesPerPixel;
+	}
+
+	/**
+	 * Applies the operation to a given image.
+	 * @param mask - the mask of the image, all false if no mask was given.
+	 * @param keepMask - the protection mask of the image, null if none was given.
+	 * @param workspaces - lends the workspaces of the seam carvers.
+	 */
+	public abstract BufferedImage apply(Logger logger, BufferedImage img, boolean[][] mask,
+			boolean[][] keepMask, Options options, CarvingWorkspace.Pool workspaces);
+
+	public static Operation of(String title) {
+		for (Operation op : values())
+			if (op.title.equals(title))
+				return op;
+
+		throw new IllegalArgumentException("Unknown operation: " + title);
+	}
+
+	public static String names() {
+		return Arrays.stream(values()).map(op -> op.title).collect(Collectors.joining(", "));
+	}
+
+	/**
+	 * Estimates the memory the operation takes for an image of given dimensions.
+	 */
+	public long estimateMemory(int width, int height, Options options) {
+		long inPixels = (long) width * height;
+		if (this == SHOW_SEAMS_VERTICAL || this == SHOW_SEAMS_HORIZONTAL)
+			return bytesPerPixel * inPixels;
+
+		long outPixels = (long) (options.width == null ? width : options.width.of(width))
+				* (options.height == null ? height : options.height.of(height));
+		return bytesPerPixel * Math.max(inPixels, outPixels);
+	}
+
+	private static BufferedImage showSeams(SeamsCarver sc, int seamColorRGB, CarvingWorkspace.Pool workspaces) {
+		CarvingWorkspace workspace = workspaces.borrow();
+		try {
+			sc.setWorkspace(workspace);
+			return sc.showSeams(seamColorRGB);
+		} finally {
+			workspaces.release(workspace);
+		}
+	}
+
+	/**
+	 * Returns the number of seams to show across a given dimension (none if it is not given).
+	 * A percentage is of the dimension.
+	 */
+	private static int seamsToShow(Options.Size seams, int size) {
+		int count = seams == null ? 0 : seams.of(size);
+		if (count >= size)
+			throw new IllegalArgumentException("Can not show " + count + " seams of an image of size " + size);
+
+		return count;
+	}
+
+	private static int outWidth(BufferedImage img, Options options) {
+		return options.width == null ? img.getWidth() : options.width.of(img.getWidth());
+	}
+
+	private static int outHeight(BufferedImage img, Options options) {
+		return options.height == null ? img.getHeight() : options.height.of(img.getHeight());
+	}
+}
@@ -0,0 +1,204 @@
+package edu.cg.cli;
+
+import java.io.File;
+
+import edu.cg.EnergyFunction;
+import edu.cg.RGBWeights;
+
+/**
+ * Represents the command line options of the batch application.
+ */
+public class Options {
+	// MARK: A size which is either absolute, or relative to the input size.
+	public static class Size {
+		public final int value;
+		public final boolean percent;
+
+		public Size(int value, boolean percent) {
+			this.value = value;
+			this.percent = percent;
+		}
+
+		public static Size parse(String s) {
+			boolean percent = s.endsWith("%");
+			int value = Integer.parseInt(percent ? s.substring(0, s.length() - 1) : s);
+			if (value <= 0)
+				throw new IllegalArgumentException("Size must be positive: " + s);
+			return new Size(value, percent);
+		}
+
+		// Returns the size for a given input size.
+		public int of(int inSize) {
+			return percent ? Math.max(1, (int) Math.round(inSize * value / 100.0)) : value;
+		}
+	}
+
+	// MARK: Resizing operations.
+	public enum Resizing { SEAM_CARVING, NEAREST_NEIGHBOR }
+
+	// MARK: Fields
+	public Operation operation;
+	public File input;
+	public File output;
+	public File mask;          // A mask image, or a directory of masks named after the images (may be null).
+	public File keep;          // A protection mask image, or a directory of them, like the mask (may be null).
+	public Size width;         // Output width, or number of vertical seams to show (null keeps the input width).
+	public Size height;        // Output height, or number of horizontal seams to show (null keeps the input height).
+	public RGBWeights rgbWeights = new RGBWeights(1, 1, 1);
+	public Resizing resizing = Resizing.SEAM_CARVING;
+	public EnergyFunction energy = EnergyFunction.GRADIENT;
+	public String format;      // Output format (null keeps the format of the output name or of the input).
+	public int threads = 1;    // Number of threads each image is processed with.
+	public int workers = 1;    // Number of images processed at the same time.
+	public int ioThreads = 4;  // Number of images decoded or encoded at the same time.
+	public long memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3; // Memory the images in flight may take, in bytes.
+	public boolean verbose;    // Whether the messages of the processors are printed.
+
+	public static String usage() {
+		return String.join(System.lineSeparator(),
+				"Usage: edu.cg.Main --op <operation> --in <file|dir> --out <file|dir> [options]",
+				"Operations: " + Operation.names(),
+				"Options:",
+				"  --width <n|n%>          output width (default: input width); for show-seams-vertical,",
+				"                          the number of seams to show (default: none)",
+				"  --height <n|n%>         output height (default: input height); for show-seams-horizontal,",
+				"                          the number of seams to show (default: none)",
+				"  --weights <r,g,b>       RGB weights between 0 and 100 (default: 1,1,1)",
+				"  --resizing <seam|nn>    resizing operation (default: seam)",
+				"  --energy <name>         pixel energy of seam carving: gradient, sobel or entropy",
+				"                          (default: gradient, the cheapest one)",
+				"  --mask <file|dir>       mask image, non black pixels are masked; a directory holds",
+				"                          a mask of the same name for each image",
+				"  --keep <file|dir>       protection mask image, seams avoid its non black pixels;",
+				"                          a directory holds a mask of the same name for each image",
+				"  --format <name>         output format, such as png or jpg",
+				"  --threads <n>           threads per image (default: 1)",
+				"  --workers <n>           images processed at the same time (default: 1)",
+				"  --io-threads <n>        images decoded or encoded at the same time (default: 4)",
+				"  --memory <mb>           memory the images in flight may take (default: 3/4 of the heap)",
+				"  --verbose               print the messages of the processors");
+	}
+
+	public static Options parse(String[] args) {
+		Options options = new Options();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--verbose")) {
+				options.verbose = true;
+				continue;
+			}
+
+			if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value for " + arg);
+			String value = args[++i];
+
+			switch (arg) {
+			case "--op":
+				options.operation = Operation.of(value);
+				break;
+			case "--in":
+				options.input = new File(value);
+				break;
+			case "--out":
+				options.output = new File(value);
+				break;
+			case "--mask":
+				options.mask = new File(value);
+				break;
+			case "--keep":
+				options.keep = new File(value);
+				break;
+			case "--width":
+				options.width = Size.parse(value);
+				break;
+			case "--height":
+				options.height = Size.parse(value);
+				break;
+			case "--weights":
+				options.rgbWeights = parseWeights(value);
+				break;
+			case "--resizing":
+				options.resizing = parseResizing(value);
+				break;
+			case "--energy":
+				options.energy = parseEnergy(value);
+				break;
+			case "--format":
+				options.format = value;
+				break;
+			case "--threads":
+				options.threads = Integer.parseInt(value);
+				if (options.threads < 1)
+					throw new IllegalArgumentException("Number of threads must be positive");
+				break;
+			case "--workers":
+				options.workers = Integer.parseInt(value);
+				if (options.workers < 1)
+					throw new IllegalArgumentException("Number of workers must be positive");
+				break;
+			case "--io-threads":
+				options.ioThreads = Integer.parseInt(value);
+				if (options.ioThreads < 1)
+					throw new IllegalArgumentException("Number of I/O threads must be positive");
+				break;
+			case "--memory":
+				options.memoryBudget = Long.parseLong(value) << 20;
+				if (options.memoryBudget <= 0)
+					throw new IllegalArgumentException("Memory budget must be positive");
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + arg);
+			}
+		}
+
+		if (options.operation == null)
+			throw new IllegalArgumentException("Missing --op");
+		if (options.input == null)
+			throw new IllegalArgumentException("Missing --in");
+		if (options.output == null)
+			throw new IllegalArgumentException("Missing --out");
+		if (options.operation == Operation.REMOVE_OBJECT && options.mask == null)
+			throw new IllegalArgumentException("Object removal requires --mask");
+
+		return options;
+	}
+
+	private static RGBWeights parseWeights(String s) {
+		String[] values = s.split(",");
+		if (values.length != 3)
+			throw new IllegalArgumentException("RGB weights must be three comma separated values: " + s);
+
+		int red = Integer.parseInt(values[0].trim());
+		int green = Integer.parseInt(values[1].trim());
+		int blue = Integer.parseInt(values[2].trim());
+		if (red < 0 | red > 100 | green < 0 | green > 100 | blue < 0 | blue > 100 | red + green + blue <= 0)
+			throw new IllegalArgumentException("The RGB weights values must be Integers between 0 and 100,"
+					+ " and their amount must be positive.");
+
+		return new RGBWeights(red, green, blue);
+	}
+
+	private static EnergyFunction parseEnergy(String s) {
+		switch (s) {
+		case "gradient":
+			return EnergyFunction.GRADIENT;
+		case "sobel":
+			return EnergyFunction.SOBEL;
+		case "entropy":
+			return EnergyFunction.ENTROPY;
+		default:
+			throw new IllegalArgumentException("Unknown energy function: " + s);
+		}
+	}
+
+	private static Resizing parseResizing(String s) {
+		switch (s) {
+		case "seam":
+			return Resizing.SEAM_CARVING;
+		case "nn":
+			return Resizing.NEAREST_NEIGHBOR;
+		default:
+			throw new IllegalArgumentException("Unknown resizing operation: " + s);
+		}
+	}
+}
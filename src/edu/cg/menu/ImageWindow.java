@@ -19,6 +19,8 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
+import edu.cg.Logger.Level;
+
 @SuppressWarnings("serial")
 public class ImageWindow extends JFrame {
 	private MenuWindow menuWindow;
@@ -74,7 +76,7 @@ public class ImageWindow extends JFrame {
 			ImageIO.write(img, "png", file);
 			menuWindow.log("File: " + file.getName() + ".png has been saved.");
 		} catch (IOException e) {
-			menuWindow.log("Failed to save image: " + getTitle()); 
+			menuWindow.log(Level.ERROR, "Failed to save image: " + getTitle());
 			JOptionPane.showMessageDialog(this, "Can't save file!", "Error", JOptionPane.ERROR_MESSAGE);
 		}
 	}
@@ -2,6 +2,8 @@ package edu.cg.menu;
 
 /*
  * This class displays an image in a new window and allows to draw a mask based on the image.
+ * The removal brush paints the pixels the seams go through, and the protection brush
+ * paints the pixels the seams avoid.
  */
 
 import java.awt.BorderLayout;
@@ -28,10 +30,14 @@ public class MaskPainterWindow extends JFrame {
 	private int imgHeight;
 	private int imgWidth;
 	private boolean[][] imageMask;
+	private boolean[][] keepMask;
+	private boolean protecting; // Whether the brush paints the protected pixels.
 	private int brushSize = MEDIUM_BRUSH_SIZE;
 	private static final int SMALL_BRUSH_SIZE = 4;
 	private static final int MEDIUM_BRUSH_SIZE = 8;
 	private static final int LARGE_BRUSH_SIZE = 16;
+	private static final Color REMOVAL_COLOR = new Color(255, 0, 0, 50);
+	private static final Color PROTECTION_COLOR = new Color(0, 255, 0, 50);
 	private PainterPanel maskPainter = null;
 
 	/**
@@ -72,6 +78,20 @@ public class MaskPainterWindow extends JFrame {
 		});
 		northPanel.add(btnLargeBrush);
 
+		JLabel modeLabel = new JLabel("  Paint :  ");
+		northPanel.add(modeLabel);
+
+		JButton btnRemovalBrush = new JButton("Removal");
+		btnRemovalBrush.addActionListener(e -> {
+			protecting = false;
+		});
+		northPanel.add(btnRemovalBrush);
+		JButton btnProtectionBrush = new JButton("Protection");
+		btnProtectionBrush.addActionListener(e -> {
+			protecting = true;
+		});
+		northPanel.add(btnProtectionBrush);
+
 		JButton btnClear = new JButton("Clear Mask");
 		btnClear.addActionListener(e -> {
 			if (maskPainter != null) {
@@ -88,7 +108,7 @@ public class MaskPainterWindow extends JFrame {
 		JButton btnRemoveObject = new JButton("Remove Object");
 		btnRemoveObject.addActionListener(e -> {
 			try {
-			menuWindow.removeObjectFromImage(imageMask);
+			menuWindow.removeObjectFromImage(imageMask, keepMask);
 			setVisible(false);
 			dispose();
 			}
@@ -98,7 +118,10 @@ public class MaskPainterWindow extends JFrame {
 		southPanel.add(btnRemoveObject);
 		
 		JButton btnSetMask = new JButton("Set Mask");
-		btnSetMask.addActionListener(e -> menuWindow.setImageMask(imageMask));
+		btnSetMask.addActionListener(e -> {
+			menuWindow.setImageMask(imageMask);
+			menuWindow.setKeepMask(keepMask);
+		});
 		southPanel.add(btnSetMask);
 		
 		contentPane.add(southPanel, BorderLayout.SOUTH);
@@ -154,12 +177,14 @@ public class MaskPainterWindow extends JFrame {
 			int[] pY = { a_y, b_y, c_y, d_y };
 			Polygon poly = new Polygon(pX, pY, 4);
 			Graphics g = getGraphics();
-			g.setColor(new Color(255, 0, 0, 50));
+			g.setColor(protecting ? PROTECTION_COLOR : REMOVAL_COLOR);
 			g.fillPolygon(poly);
+			// A pixel is either removed or protected, by the last brush which painted it.
 			for (int x = Math.min(d_x, c_x); x <= Math.max(b_x, a_x); x++) {
 				for (int y = Math.min(d_y, c_y); y <= Math.max(b_y, a_y); y++) {
 					if (poly.contains(x, y)) {
-						imageMask[y][x] = true;
+						imageMask[y][x] = !protecting;
+						keepMask[y][x] = protecting;
 					}
 				}
 			}
@@ -198,9 +223,10 @@ public class MaskPainterWindow extends JFrame {
 		public void mouseExited(MouseEvent e) {
 		}
 
-		// Clears the current mask and repaints the input image.
+		// Clears the current masks and repaints the input image.
 		public void clearMask() {
 			imageMask = new boolean[img.getHeight()][img.getWidth()];
+			keepMask = new boolean[img.getHeight()][img.getWidth()];
 			Graphics g = getGraphics();
 			if (g != null) {
 				paintComponent(g);
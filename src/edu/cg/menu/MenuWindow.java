@@ -5,15 +5,22 @@ import java.awt.Color;
 import java.awt.GridLayout;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.function.Function;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
+import edu.cg.CarvingWorkspace;
 import edu.cg.RGBWeights;
 import edu.cg.ImageProcessor;
 import edu.cg.Logger;
+import edu.cg.ObjectRemover;
+import edu.cg.PixelBuffer;
+import edu.cg.Progress;
 import edu.cg.SeamsCarver;
+import edu.cg.SeamsCarver.Direction;
+import edu.cg.SeamsRetargeter;
 import edu.cg.UnimplementedMethodException;
 import edu.cg.menu.components.ActionsController;
 import edu.cg.menu.components.ColorMixer;
@@ -27,7 +34,9 @@ public class MenuWindow extends JFrame implements Logger {
 	// MARK: fields
 	private BufferedImage workingImage;
 	private boolean[][] imageMask;
+	private boolean[][] keepMask; // The pixels the seams avoid.
 	private String imageTitle;
+	private final CarvingWorkspace.Pool workspaces; // Lends the workspaces of the seam carvers, across actions.
 
 	// MARK: GUI fields
 	private ImagePicker imagePicker;
@@ -76,7 +85,9 @@ public class MenuWindow extends JFrame implements Logger {
 
 		workingImage = null;
 		imageMask = null;
+		keepMask = null;
 		imageTitle = null;
+		workspaces = new CarvingWorkspace.Pool(2);
 
 		pack();
 	}
@@ -91,13 +102,15 @@ public class MenuWindow extends JFrame implements Logger {
 		int outWidth = scaleSelector.width();
 		int outHeight = scaleSelector.height();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
-		BufferedImage img = new ImageProcessor(this, duplicateImage(), rgbWeights, outWidth, outHeight).changeHue();
-		present(img, "Change hue");
+		BufferedImage src = duplicateImage();
+		runInBackground("Change hue",
+				progress -> new ImageProcessor(this, src, rgbWeights, outWidth, outHeight).changeHue());
 	}
 
 	public void greyscale() {
-		BufferedImage img = new ImageProcessor(this, duplicateImage(), colorMixer.getRGBWeights()).greyscale();
-		present(img, "Grey scale");
+		RGBWeights rgbWeights = colorMixer.getRGBWeights();
+		BufferedImage src = duplicateImage();
+		runInBackground("Grey scale", progress -> new ImageProcessor(this, src, rgbWeights).greyscale());
 	}
 
 	public void resize() {
@@ -105,43 +118,70 @@ public class MenuWindow extends JFrame implements Logger {
 		int outHeight = scaleSelector.height();
 		ResizingOperation op = scaleSelector.resizingOperation();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
-		BufferedImage img;
+		BufferedImage src = duplicateImage();
+		String title = "Resize: " + op.title + " [" + outWidth + "][" + outHeight + "]";
 		switch (op) {
 		case NEAREST_NEIGHBOR:
-			img = new ImageProcessor(this, duplicateImage(), rgbWeights, outWidth, outHeight).nearestNeighbor();
+			runInBackground(title,
+					progress -> new ImageProcessor(this, src, rgbWeights, outWidth, outHeight).nearestNeighbor());
 			break;
 
 		default: // seam carving
-			SeamsCarver sc = new SeamsCarver(this, duplicateImage(), outWidth, rgbWeights, duplicateMask());
-			img = sc.resize();
-			boolean[][] new_mask = sc.getMaskAfterSeamCarving();
-			img = new SeamsCarver(this, rotateClockwise(img), outHeight, rgbWeights, rotateMaskClockwise(new_mask))
-					.resize();
-			img = rotateCounterclockwise(img);
+			boolean[][] mask = duplicateMask();
+			boolean[][] keep = keepMask;
+			runInBackground(title, progress -> {
+				SeamsRetargeter retargeter = new SeamsRetargeter(this, src, outWidth, outHeight, rgbWeights, mask);
+				retargeter.setKeepMask(keep);
+				retargeter.setProgress(progress);
+				retargeter.setWorkspacePool(workspaces);
+				return retargeter.retarget();
+			});
 			break;
 		}
-
-		present(img, "Resize: " + op.title + " [" + outWidth + "][" + outHeight + "]");
 	}
 
 	public void showSeamsVertical() {
 		int outWidth = scaleSelector.width();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
-		BufferedImage vertical = new SeamsCarver(this, duplicateImage(), outWidth, rgbWeights, duplicateMask())
-				.showSeams(Color.RED.getRGB());
-		present(vertical, "Show seams vertical");
+		BufferedImage src = duplicateImage();
+		boolean[][] mask = duplicateMask();
+		boolean[][] keep = keepMask;
+		runInBackground("Show seams vertical", progress -> {
+			SeamsCarver carver = new SeamsCarver(this, src, outWidth, rgbWeights, mask, keep, Direction.VERTICAL);
+			carver.setProgress(progress);
+			return showSeams(carver, Color.RED.getRGB());
+		});
 	}
 
 	public void showSeamsHorizontal() {
 		int outHeight = scaleSelector.height();
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
+		BufferedImage src = workingImage;
+		boolean[][] mask = imageMask;
+		boolean[][] keep = keepMask;
+		runInBackground("Show seams horizontal", progress -> {
+			SeamsCarver carver = new SeamsCarver(this, src, outHeight, rgbWeights, mask, keep, Direction.HORIZONTAL);
+			carver.setProgress(progress);
+			return showSeams(carver, Color.BLACK.getRGB());
+		});
+	}
 
-		BufferedImage horizontal = new SeamsCarver(this, rotateClockwise(workingImage), outHeight, rgbWeights,
-				rotateMaskClockwise(imageMask)).showSeams(Color.BLACK.getRGB());
-
-		horizontal = rotateCounterclockwise(horizontal);
+	private BufferedImage showSeams(SeamsCarver carver, int seamColorRGB) {
+		CarvingWorkspace workspace = workspaces.borrow();
+		try {
+			carver.setWorkspace(workspace);
+			return carver.showSeams(seamColorRGB);
+		} finally {
+			workspaces.release(workspace);
+		}
+	}
 
-		present(horizontal, "Show seams horizontal");
+	/**
+	 * Creates an image off the event dispatch thread, and presents it once it is created.
+	 * The inputs of the action must be read before, on the event dispatch thread.
+	 */
+	private void runInBackground(String title, Function<Progress, BufferedImage> action) {
+		actionsController.runInBackground(title, action, img -> present(img, title));
 	}
 
 	private void present(BufferedImage img, String title) {
@@ -151,55 +191,8 @@ public class MenuWindow extends JFrame implements Logger {
 		new ImageWindow(img, imageTitle + "; " + title, this).setVisible(true);
 	}
 
-	private static BufferedImage rotateClockwise(BufferedImage img) {
-		int imgWidth = img.getWidth();
-		int imgHeight = img.getHeight();
-		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
-		for (int y = 0; y < imgWidth; ++y)
-			for (int x = 0; x < imgHeight; ++x) {
-				int imgX = y;
-				int imgY = imgHeight - 1 - x;
-				ans.setRGB(x, y, img.getRGB(imgX, imgY));
-			}
-
-		return ans;
-	}
-
-	private static boolean[][] rotateMaskClockwise(boolean[][] mask) {
-		int height = mask.length;
-		int width = mask[0].length;
-		boolean[][] ans = new boolean[width][height];
-		for (int y = 0; y < height; ++y)
-			for (int x = 0; x < width; ++x) {
-				int X = y;
-				int Y = width - 1 - x;
-				ans[Y][X] = mask[y][x];
-			}
-
-		return ans;
-	}
-
-	private static BufferedImage rotateCounterclockwise(BufferedImage img) {
-		int imgWidth = img.getWidth();
-		int imgHeight = img.getHeight();
-		BufferedImage ans = new BufferedImage(imgHeight, imgWidth, img.getType());
-		for (int y = 0; y < imgWidth; ++y)
-			for (int x = 0; x < imgHeight; ++x) {
-				int imgX = imgWidth - 1 - y;
-				int imgY = x;
-				ans.setRGB(x, y, img.getRGB(imgX, imgY));
-			}
-
-		return ans;
-	}
-
 	private static BufferedImage duplicateImage(BufferedImage img) {
-		BufferedImage dup = new BufferedImage(img.getWidth(), img.getHeight(), img.getType());
-		for (int y = 0; y < dup.getHeight(); ++y)
-			for (int x = 0; x < dup.getWidth(); ++x)
-				dup.setRGB(x, y, img.getRGB(x, y));
-
-		return dup;
+		return PixelBuffer.of(img).toImage(img.getType());
 	}
 
 	private static boolean[][] duplicateMask(boolean[][] mask) {
@@ -226,6 +219,7 @@ public class MenuWindow extends JFrame implements Logger {
 		scaleSelector.setHeight(workingImage.getHeight());
 		actionsController.activateButtons();
 		imageMask = new boolean[workingImage.getHeight()][workingImage.getWidth()];
+		keepMask = new boolean[workingImage.getHeight()][workingImage.getWidth()];
 	}
 
 	public void present() {
@@ -238,62 +232,40 @@ public class MenuWindow extends JFrame implements Logger {
 		logField.log(s);
 	}
 
+	@Override
+	public void log(Level level, String s) {
+		logField.log(level, s);
+	}
+
+	@Override
+	public boolean isLoggable(Level level) {
+		return logField.isLoggable(level);
+	}
+
 	public void setImageMask(boolean[][] srcMask) {
 		imageMask = duplicateMask(srcMask);
 	}
 
-	public void removeObjectFromImage(boolean[][] srcMask) {
-		BufferedImage result = duplicateImage(workingImage);
-		boolean[][] tempMask = duplicateMask(srcMask);
+	public void setKeepMask(boolean[][] srcKeepMask) {
+		keepMask = duplicateMask(srcKeepMask);
+	}
 
-		int width = workingImage.getWidth();
+	public void removeObjectFromImage(boolean[][] srcMask, boolean[][] srcKeepMask) {
 		RGBWeights rgbWeights = colorMixer.getRGBWeights();
-
-		// Find the maximum number of true values in a row
-		// in the mask.
-		int maxCount = getMaxTrueValuesInMask(tempMask);
-
-		while (maxCount > 0) {
-			// Bound the number of seams to reduce in each use of
-			// the seam carver
-			int numOfSeamsToReduce = Math.min(maxCount, (width / 3) - 1);
-			int outWidth = width - numOfSeamsToReduce;
-
-			SeamsCarver sc = new SeamsCarver(this, result, outWidth,
-					rgbWeights, tempMask);
-
-			// Reduce the image and get the updated mask.
-			result = sc.resize();
-			tempMask = sc.getMaskAfterSeamCarving();
-			maxCount = getMaxTrueValuesInMask(tempMask);
-		}
-
-		// Increase the image back to it's original size.
-		SeamsCarver sc = new SeamsCarver(this, result, width, rgbWeights, duplicateMask());
-		result = sc.resize();
-		present(result, "Image After Object Removal");
+		BufferedImage src = workingImage;
+		boolean[][] objectMask = duplicateMask(srcMask); // The mask painter may keep painting.
+		boolean[][] keep = duplicateMask(srcKeepMask);
+		boolean[][] mask = imageMask;
+		runInBackground("Image After Object Removal", progress -> {
+			ObjectRemover remover = new ObjectRemover(this, src, rgbWeights, objectMask, mask);
+			remover.setKeepMask(keep);
+			remover.setProgress(progress);
+			remover.setWorkspacePool(workspaces);
+			return remover.removeObject();
+		});
 	}
 
 	public void maskImage() {
 		new MaskPainterWindow(duplicateImage(), "Mask Painter", this).setVisible(true);
 	}
-
-	/**
-	 * Find the maximum number of true values per row in a given mask.
-	 * @param mask - matrix of booleans.
-	 * @return - the maximum number.
-	 */
-	private int getMaxTrueValuesInMask(boolean[][] mask) {
-		int maxCount = 0;
-		for (boolean[] row : mask) {
-			int currentRowCounter = 0;
-			for (boolean col : row) {
-				if (col) currentRowCounter++;
-			}
-
-			if (currentRowCounter > maxCount) maxCount = currentRowCounter;
-		}
-
-		return maxCount;
-	}
 }
@@ -3,15 +3,24 @@ package edu.cg.menu.components;
 import java.awt.Component;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javax.swing.JButton;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.SwingWorker;
 import javax.swing.border.EtchedBorder;
 
 import edu.cg.Logger;
+import edu.cg.Logger.Level;
+import edu.cg.Progress;
 import edu.cg.menu.MenuWindow;
 
 @SuppressWarnings("serial")
@@ -19,6 +28,9 @@ public class ActionsController extends JPanel {
 	private List<JButton> buttons;
 	private Logger logger;
 	private Component mainComponent;
+	private JProgressBar progressBar;
+	private JButton btnCancel;
+	private SwingWorker<BufferedImage, int[]> task; // The running background task (null if there is none).
 	
 	public ActionsController(MenuWindow menuWindow) {
 		super();
@@ -49,6 +61,24 @@ public class ActionsController extends JPanel {
 		
 		panel2.add(addAndGetButton("Show seams - vertical", menuWindow::showSeamsVertical));
 		panel2.add(addAndGetButton("Show seams - horizontal", menuWindow::showSeamsHorizontal));
+
+		JPanel panel3 = new JPanel();
+		panel3.setBorder(new EtchedBorder(EtchedBorder.LOWERED, null, null));
+		panel3.setLayout(new FlowLayout(FlowLayout.CENTER, 5, 5));
+		add(panel3);
+
+		progressBar = new JProgressBar();
+		progressBar.setStringPainted(true);
+		progressBar.setString("");
+		panel3.add(progressBar);
+
+		btnCancel = new JButton("Cancel");
+		btnCancel.addActionListener(e -> {
+			if (task != null)
+				task.cancel(false);
+		});
+		btnCancel.setEnabled(false);
+		panel3.add(btnCancel);
 	}
 	
 	private JButton addAndGetButton(String btnName, Runnable action) {
@@ -58,7 +88,7 @@ public class ActionsController extends JPanel {
 				action.run();
 			} catch (Exception ex) {
 				String msg = "Error in " + btnName + "!" + System.lineSeparator() + ex.getMessage();
-				logger.log(msg);
+				logger.log(Level.ERROR, msg);
 				JOptionPane.showMessageDialog(mainComponent, msg, "Error", JOptionPane.ERROR_MESSAGE);
 			}
 		});
@@ -68,7 +98,88 @@ public class ActionsController extends JPanel {
 	}
 
 	public void activateButtons() {
+		if (task != null)
+			return; // The buttons are activated once the running task ends.
+
 		for(JButton btn: buttons)
 			btn.setEnabled(true);
 	}
+
+	/**
+	 * Runs a task which creates an image on a background thread, while the actions
+	 * are disabled and the progress is presented, and hands the image to a consumer
+	 * on the event dispatch thread.
+	 * The cancel button stops the task at its next progress step.
+	 * Must be called on the event dispatch thread.
+	 */
+	public void runInBackground(String title, Function<Progress, BufferedImage> action, Consumer<BufferedImage> onDone) {
+		if (task != null) {
+			logger.log("Can not start " + title + " while another action is running.");
+			return;
+		}
+
+		task = new SwingWorker<BufferedImage, int[]>() {
+			@Override
+			protected BufferedImage doInBackground() {
+				SwingWorker<BufferedImage, int[]> worker = this;
+				return action.apply(new Progress() {
+					@Override
+					public void update(int done, int total) {
+						publish(new int[] { done, total });
+					}
+
+					@Override
+					public boolean isCancelled() {
+						return worker.isCancelled();
+					}
+				});
+			}
+
+			@Override
+			protected void process(List<int[]> chunks) {
+				int[] last = chunks.get(chunks.size() - 1);
+				progressBar.setIndeterminate(false);
+				progressBar.setMaximum(last[1]);
+				progressBar.setValue(last[0]);
+				progressBar.setString(title + ": " + last[0] + " / " + last[1]);
+			}
+
+			@Override
+			protected void done() {
+				setRunning(null);
+				try {
+					onDone.accept(get());
+				} catch (CancellationException e) {
+					logger.log(title + " was cancelled.");
+				} catch (InterruptedException | ExecutionException e) {
+					Throwable cause = e.getCause() != null ? e.getCause() : e;
+					if (cause instanceof CancellationException) {
+						logger.log(title + " was cancelled.");
+						return;
+					}
+
+					String msg = "Error in " + title + "!" + System.lineSeparator() + cause.getMessage();
+					logger.log(Level.ERROR, msg);
+					JOptionPane.showMessageDialog(mainComponent, msg, "Error", JOptionPane.ERROR_MESSAGE);
+				}
+			}
+		};
+
+		setRunning(title);
+		task.execute();
+	}
+
+	// Presents whether a task with a given title is running (null if none is).
+	private void setRunning(String title) {
+		boolean running = title != null;
+		if (!running)
+			task = null;
+
+		for(JButton btn: buttons)
+			btn.setEnabled(!running);
+		btnCancel.setEnabled(running);
+		progressBar.setIndeterminate(running);
+		progressBar.setValue(0);
+		progressBar.setString(running ? title : "");
+	}
 }
@@ -12,6 +12,7 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.border.EtchedBorder;
 
+import edu.cg.Logger.Level;
 import edu.cg.menu.MenuWindow;
 
 @SuppressWarnings("serial")
@@ -61,7 +62,7 @@ public class ImagePicker extends JPanel {
 			menuWindow.present();
 		} catch(Exception e) {
 			String msg = "Can't open file!";
-			menuWindow.log(msg);
+			menuWindow.log(Level.ERROR, msg);
 			JOptionPane.showMessageDialog(menuWindow, msg, "Error", JOptionPane.ERROR_MESSAGE);
 		}
 	}
@@ -2,19 +2,28 @@ package edu.cg.menu.components;
 
 import java.awt.BorderLayout;
 import java.util.Calendar;
+import java.util.List;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EtchedBorder;
 
+import edu.cg.AsyncLogger;
 import edu.cg.Logger;
 
 @SuppressWarnings("serial")
 public class LogField extends JPanel implements Logger {
+	// Size of the buffer of messages which are not presented yet.
+	private static final int LOG_CAPACITY = 4096;
+
+	// Maximal number of messages of the same type presented per second.
+	private static final int MAX_MESSAGES_PER_SECOND = 20;
+
 	private JTextArea txtLog;
-	
+	private AsyncLogger asyncLogger;
 	
 	public LogField() {
 		super();
@@ -30,20 +39,55 @@ public class LogField extends JPanel implements Logger {
 		txtLog.setLineWrap(true);
 		JScrollPane scrollLog = new JScrollPane(txtLog);
 		add(scrollLog);
+
+		// The messages are logged from any thread without blocking, and are
+		// presented in batches on the event dispatch thread.
+		// The level can be set by the edu.cg.logLevel system property (DEBUG shows every seam).
+		String levelName = System.getProperty("edu.cg.logLevel", Level.INFO.name());
+		Level level = parseLevel(levelName);
+		asyncLogger = new AsyncLogger(records -> SwingUtilities.invokeLater(() -> append(records)),
+				level == null ? Level.INFO : level, LOG_CAPACITY, MAX_MESSAGES_PER_SECOND);
+		if (level == null)
+			asyncLogger.log(Level.ERROR, "Unknown log level: " + levelName + ", logging at " + Level.INFO + ".");
+	}
+
+	// Returns the level of a given name in any case, or null if there is no such level.
+	private static Level parseLevel(String name) {
+		for (Level level : Level.values())
+			if (level.name().equalsIgnoreCase(name.trim()))
+				return level;
+
+		return null;
 	}
 
 	@Override
-	public synchronized void log(String s) {
-		if(s == null)
-			s = "null";
-		
+	public void log(String s) {
+		asyncLogger.log(s);
+	}
+
+	@Override
+	public void log(Level level, String s) {
+		asyncLogger.log(level, s);
+	}
+
+	@Override
+	public boolean isLoggable(Level level) {
+		return asyncLogger.isLoggable(level);
+	}
+
+	// Presents a batch of messages, on the event dispatch thread.
+	private void append(List<AsyncLogger.Record> records) {
+		StringBuilder sb = new StringBuilder();
 		Calendar cal = Calendar.getInstance();
-		String hh = convertTime(cal.get(Calendar.HOUR_OF_DAY));
-		String mm = convertTime(cal.get(Calendar.MINUTE));
-		String ss = convertTime(cal.get(Calendar.SECOND));
-		String time = "[" + hh + ":" + mm + ":" + ss + "] ~ ";
-		String msg = time + s + System.lineSeparator();
-		txtLog.append(msg);
+		for (AsyncLogger.Record record : records) {
+			cal.setTimeInMillis(record.time);
+			String hh = convertTime(cal.get(Calendar.HOUR_OF_DAY));
+			String mm = convertTime(cal.get(Calendar.MINUTE));
+			String ss = convertTime(cal.get(Calendar.SECOND));
+			sb.append("[" + hh + ":" + mm + ":" + ss + "] ~ ").append(record.message).append(System.lineSeparator());
+		}
+
+		txtLog.append(sb.toString());
 	}
 	
 	private static String convertTime(int t) {
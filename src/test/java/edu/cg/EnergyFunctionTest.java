@@ -0,0 +1,52 @@
+package edu.cg;
+
+import static edu.cg.TestImages.assertSameImage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.cg.SeamsCarver.Direction;
+
+class EnergyFunctionTest {
+	private static final int WIDTH = 120;
+	private static final int HEIGHT = 80;
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void incrementalUpdateFindsTheSeamsOfAFullRebuild(long seed) {
+		BufferedImage img = TestImages.random(seed, WIDTH, HEIGHT);
+		EnergyFunction[] energies = { EnergyFunction.GRADIENT, EnergyFunction.SOBEL, EnergyFunction.ENTROPY,
+				EnergyFunction.saliencyMap(TestImages.randomValues(seed, WIDTH, HEIGHT, 256)) };
+		for (EnergyFunction energy : energies) {
+			for (Direction direction : Direction.values()) {
+				int size = direction == Direction.VERTICAL ? WIDTH : HEIGHT;
+				for (int outSize : new int[] { size - size / 3, size + size / 4 }) {
+					String message = energy.getClass().getSimpleName() + " " + direction + " to " + outSize;
+					SeamsCarver incremental = carver(img, outSize, seed, energy, direction);
+					SeamsCarver full = carver(img, outSize, seed, energy, direction);
+					full.setIncrementalUpdate(false);
+
+					assertSameImage(full.resize(), incremental.resize(), message);
+					assertArrayEquals(full.getKeepMaskAfterSeamCarving(),
+							incremental.getKeepMaskAfterSeamCarving(), message);
+					assertArrayEquals(full.getEnergyFunctionAfterSeamCarving().input(),
+							incremental.getEnergyFunctionAfterSeamCarving().input(), message);
+				}
+			}
+		}
+	}
+
+	// Each carver takes masks of its own, as a vertical carver shifts the masks it is given.
+	private static SeamsCarver carver(BufferedImage img, int outSize, long seed, EnergyFunction energy,
+			Direction direction) {
+		boolean[][] mask = TestImages.randomMask(seed, img.getWidth(), img.getHeight());
+		boolean[][] keep = TestImages.randomMask(~seed, img.getWidth(), img.getHeight());
+		SeamsCarver sc = new SeamsCarver(Logger.NONE, img, outSize, TestImages.RGB_WEIGHTS, mask, keep,
+				direction);
+		sc.setEnergyFunction(energy);
+		return sc;
+	}
+}
@@ -0,0 +1,172 @@
+package edu.cg;
+
+import static edu.cg.TestImages.assertSameImage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import edu.cg.SeamsCarver.Direction;
+
+class SeamsCarverTest {
+	private static final int WIDTH = 120;
+	private static final int HEIGHT = 80;
+
+	// Wide enough for the cost matrix rows to be split into several chunks.
+	private static final int WIDE = 1200;
+
+	private static ForkJoinPool pool;
+
+	@BeforeAll
+	static void createPool() {
+		pool = new ForkJoinPool(4);
+	}
+
+	@AfterAll
+	static void shutdownPool() {
+		pool.shutdown();
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void incrementalUpdateFindsTheSeamsOfAFullRebuild(long seed) {
+		BufferedImage img = TestImages.random(seed, WIDTH, HEIGHT);
+		for (Direction direction : Direction.values()) {
+			int size = direction == Direction.VERTICAL ? WIDTH : HEIGHT;
+			for (int outSize : new int[] { size - size / 3, size + size / 4 }) {
+				for (boolean masked : new boolean[] { false, true }) {
+					String message = direction + " to " + outSize + (masked ? " masked" : "");
+					SeamsCarver incremental = carver(img, outSize, masked ? seed : null, direction);
+					SeamsCarver full = carver(img, outSize, masked ? seed : null, direction);
+					full.setIncrementalUpdate(false);
+
+					assertSameImage(full.resize(), incremental.resize(), message);
+					assertArrayEquals(full.getMaskAfterSeamCarving(), incremental.getMaskAfterSeamCarving(),
+							message);
+				}
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void parallelCarvingIsTheSameAsSerial(long seed) {
+		for (Direction direction : Direction.values()) {
+			boolean vertical = direction == Direction.VERTICAL;
+			BufferedImage img = vertical ? TestImages.random(seed, WIDE, 40) : TestImages.random(seed, 40, WIDE);
+			for (int outSize : new int[] { WIDE - 100, WIDE + 100 }) {
+				String message = direction + " to " + outSize;
+				SeamsCarver serial = carver(img, outSize, seed, direction);
+				SeamsCarver parallel = carver(img, outSize, seed, direction);
+				parallel.setForEachPool(pool);
+
+				assertSameImage(serial.resize(), parallel.resize(), message);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void batchIncrementalUpdateFindsTheSeamsOfAFullRebuild(long seed) {
+		BufferedImage img = TestImages.random(seed, WIDTH, HEIGHT);
+		for (Direction direction : Direction.values()) {
+			int size = direction == Direction.VERTICAL ? WIDTH : HEIGHT;
+			for (int outSize : new int[] { size - size / 3, size + size / 4 }) {
+				String message = direction + " to " + outSize;
+				SeamsCarver incremental = carver(img, outSize, seed, direction);
+				incremental.setBatchMode(8, 0.5);
+				SeamsCarver full = carver(img, outSize, seed, direction);
+				full.setBatchMode(8, 0.5);
+				full.setIncrementalUpdate(false);
+
+				assertSameImage(full.resize(), incremental.resize(), message);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void stepsFindTheSeamsOfASingleResize(long seed) {
+		BufferedImage img = TestImages.random(seed, WIDTH, HEIGHT);
+		for (Direction direction : Direction.values()) {
+			int size = direction == Direction.VERTICAL ? WIDTH : HEIGHT;
+			int outSize = size - size / 3;
+			String message = direction + " to " + outSize;
+			SeamsCarver single = carver(img, outSize, seed, direction);
+			SeamsCarver steps = carver(img, outSize, seed, direction);
+
+			BufferedImage result = null;
+			while (steps.getSeamsLeft() > 0)
+				result = steps.reduceBy(7);
+			assertSameImage(single.resize(), result, message);
+			assertArrayEquals(single.getMaskAfterSeamCarving(), steps.getMaskAfterSeamCarving(), message);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(longs = { 1, 2, 3 })
+	void enlargingAndShowingSeamsUseTheSeamsOfAReduction(long seed) {
+		BufferedImage img = TestImages.random(seed, WIDTH, HEIGHT);
+		for (Direction direction : Direction.values()) {
+			boolean vertical = direction == Direction.VERTICAL;
+			int size = vertical ? WIDTH : HEIGHT;
+			int seams = size / 4;
+			String message = direction + " by " + seams;
+			BufferedImage shown = carver(img, size - seams, seed, direction).showSeams(TestImages.SEAM_COLOR);
+
+			// The pixels of the seams, each line of pixels across the seams holds a pixel of each seam.
+			boolean[][] seamPixels = new boolean[HEIGHT][WIDTH];
+			for (int y = 0; y < HEIGHT; y++)
+				for (int x = 0; x < WIDTH; x++)
+					seamPixels[y][x] = (shown.getRGB(x, y) & 0xFFFFFF) == TestImages.SEAM_COLOR;
+			for (int line = 0; line < (vertical ? HEIGHT : WIDTH); line++) {
+				int count = 0;
+				for (int i = 0; i < size; i++)
+					if (vertical ? seamPixels[line][i] : seamPixels[i][line]) count++;
+				assertEquals(seams, count, message + " line " + line);
+			}
+
+			assertSameImage(copySeamPixels(img, seamPixels, seams, direction, 0),
+					carver(img, size - seams, seed, direction).resize(), message + " reduced");
+			assertSameImage(copySeamPixels(img, seamPixels, seams, direction, 2),
+					carver(img, size + seams, seed, direction).resize(), message + " enlarged");
+		}
+	}
+
+	/**
+	 * Returns the image with each pixel of the seams copied a given number of times
+	 * (0 removes the seams, and 2 duplicates them).
+	 */
+	private static BufferedImage copySeamPixels(BufferedImage img, boolean[][] seamPixels, int seams,
+			Direction direction, int copies) {
+		boolean vertical = direction == Direction.VERTICAL;
+		int width = img.getWidth() + (vertical ? (copies - 1) * seams : 0);
+		int height = img.getHeight() + (vertical ? 0 : (copies - 1) * seams);
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		for (int line = 0; line < (vertical ? img.getHeight() : img.getWidth()); line++) {
+			int to = 0;
+			for (int from = 0; from < (vertical ? img.getWidth() : img.getHeight()); from++) {
+				int x = vertical ? from : line;
+				int y = vertical ? line : from;
+				for (int i = seamPixels[y][x] ? copies : 1; i > 0; i--, to++) {
+					if (vertical) result.setRGB(to, line, img.getRGB(x, y));
+					else result.setRGB(line, to, img.getRGB(x, y));
+				}
+			}
+		}
+		return result;
+	}
+
+	// Each carver takes a mask of its own, as a vertical carver shifts the mask it is given.
+	private static SeamsCarver carver(BufferedImage img, int outSize, Long maskSeed, Direction direction) {
+		boolean[][] mask = maskSeed == null ? null
+				: TestImages.randomMask(maskSeed, img.getWidth(), img.getHeight());
+		return new SeamsCarver(Logger.NONE, img, outSize, TestImages.RGB_WEIGHTS, mask, direction);
+	}
+}
@@ -0,0 +1,83 @@
+package edu.cg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Seeded random images and masks for the tests of the carvers.
+ */
+final class TestImages {
+	// Color which never appears in the random images, so the shown seams are told apart.
+	static final int SEAM_COLOR = 0xFFFFFF;
+
+	static final RGBWeights RGB_WEIGHTS = new RGBWeights(1, 1, 1);
+
+	private TestImages() {
+	}
+
+	/**
+	 * Returns an image of noise over a few flat rectangles, so that the seams have
+	 * both cheap areas to go through and ties to break. No channel is 255.
+	 */
+	static BufferedImage random(long seed, int width, int height) {
+		Random random = new Random(seed);
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = random.nextInt(0x1000000) & 0xFEFEFE;
+
+		for (int r = 0; r < 4; r++) {
+			int fromX = random.nextInt(width);
+			int fromY = random.nextInt(height);
+			int toX = Math.min(width, fromX + 1 + random.nextInt(width / 2));
+			int toY = Math.min(height, fromY + 1 + random.nextInt(height / 2));
+			int rgb = random.nextInt(0x1000000) & 0xFEFEFE;
+			for (int y = fromY; y < toY; y++)
+				for (int x = fromX; x < toX; x++)
+					pixels[y * width + x] = rgb;
+		}
+
+		BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		img.setRGB(0, 0, width, height, pixels, 0, width);
+		return img;
+	}
+
+	/**
+	 * Returns a mask of a random rectangle, of up to a quarter of each dimension.
+	 */
+	static boolean[][] randomMask(long seed, int width, int height) {
+		Random random = new Random(seed);
+		boolean[][] mask = new boolean[height][width];
+		int fromX = random.nextInt(width);
+		int fromY = random.nextInt(height);
+		int toX = Math.min(width, fromX + 1 + random.nextInt(width / 4));
+		int toY = Math.min(height, fromY + 1 + random.nextInt(height / 4));
+		for (int y = fromY; y < toY; y++)
+			for (int x = fromX; x < toX; x++)
+				mask[y][x] = true;
+		return mask;
+	}
+
+	/**
+	 * Returns a map of random values, such as a saliency map.
+	 */
+	static int[][] randomValues(long seed, int width, int height, int bound) {
+		Random random = new Random(seed);
+		int[][] values = new int[height][width];
+		for (int[] row : values)
+			for (int x = 0; x < width; x++)
+				row[x] = random.nextInt(bound);
+		return values;
+	}
+
+	static int[] pixels(BufferedImage img) {
+		return img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth());
+	}
+
+	static void assertSameImage(BufferedImage expected, BufferedImage actual, String message) {
+		assertArrayEquals(new int[] { expected.getWidth(), expected.getHeight() },
+				new int[] { actual.getWidth(), actual.getHeight() }, message);
+		assertArrayEquals(pixels(expected), pixels(actual), message);
+	}
+}